@@ -0,0 +1,128 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.sourceforge.tessboxeditor.datamodel.BoxColumns;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and writing of box files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class BoxFileBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int boxCount;
+
+    String boxText;
+    int[] pageHeights;
+    List<TessBoxCollection> boxPages;
+    List<BoxColumns> columnPages;
+    CountingWriter sink = new CountingWriter();
+
+    @Setup
+    public void setup() {
+        int pageCount = SyntheticBoxes.pageCount(boxCount);
+        boxText = SyntheticBoxes.boxText(boxCount);
+        pageHeights = SyntheticBoxes.pageHeights(pageCount);
+        boxPages = SyntheticBoxes.pages(boxCount);
+        columnPages = new ArrayList<BoxColumns>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            columnPages.add(BoxColumns.of(boxPages.get(i), pageHeights[i]));
+        }
+    }
+
+    @Benchmark
+    public List<TessBoxCollection> parse() {
+        return new BoxFileParser().parse(boxText, pageHeights);
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return write(false);
+    }
+
+    @Benchmark
+    public long writeTess2_0() throws IOException {
+        return write(true);
+    }
+
+    @Benchmark
+    public long writeColumns() throws IOException {
+        sink.count = 0;
+        try (BoxFileWriter out = new BoxFileWriter(sink, false)) {
+            for (int i = 0; i < columnPages.size(); i++) {
+                out.write(columnPages.get(i), i);
+            }
+        }
+        return sink.count;
+    }
+
+    private long write(boolean tess2_0Format) throws IOException {
+        sink.count = 0;
+        try (BoxFileWriter out = new BoxFileWriter(sink, tess2_0Format)) {
+            out.writePages(boxPages, pageHeights);
+        }
+        return sink.count;
+    }
+
+    /**
+     * Discards what is written, so that only formatting is measured.
+     */
+    static class CountingWriter extends Writer {
+
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import net.sourceforge.tessboxeditor.utilities.ImageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Image operations behind the box view and TIFF generation, on a page of
+ * synthetic text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class ImageUtilsBenchmark {
+
+    private static final int GLYPHS = SyntheticBoxes.BOXES_PER_PAGE;
+
+    @Param({"4"})
+    public int scaleFactor;
+
+    @Param({"20"})
+    public int noiseAmount;
+
+    BufferedImage page;
+    Image fxPage;
+    Image glyph;
+    int next;
+
+    @Setup
+    public void setup() {
+        page = new BufferedImage(SyntheticBoxes.PAGE_WIDTH, SyntheticBoxes.PAGE_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = page.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, page.getWidth(), page.getHeight());
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SERIF, Font.PLAIN, 28));
+        for (int i = 0; i < GLYPHS; i++) {
+            Rectangle2D rect = SyntheticBoxes.rect(i);
+            g.drawString(SyntheticBoxes.character(i), (float) rect.getMinX(), (float) rect.getMaxY());
+        }
+        g.dispose();
+
+        fxPage = SwingFXUtils.toFXImage(page, null);
+        glyph = ImageUtils.getSubimage(fxPage, SyntheticBoxes.rect(0), BoxEditorController.iconMargin);
+    }
+
+    @Benchmark
+    public Image getSubimage() {
+        Rectangle2D rect = SyntheticBoxes.rect(next++ % GLYPHS);
+        return ImageUtils.getSubimage(fxPage, rect, BoxEditorController.iconMargin);
+    }
+
+    @Benchmark
+    public Image resample() {
+        return ImageUtils.resample(glyph, scaleFactor);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BufferedImage addNoise() {
+        return ImageUtils.addNoise(page, noiseAmount);
+    }
+}
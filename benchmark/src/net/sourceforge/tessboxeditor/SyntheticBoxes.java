@@ -0,0 +1,144 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javafx.geometry.Rectangle2D;
+import net.sourceforge.tessboxeditor.datamodel.TessBox;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+
+/**
+ * Synthetic box data for benchmarks. Boxes are laid out in rows of a grid, a
+ * fixed number per page, with characters cycling through a mix of ASCII and
+ * multibyte letters.
+ */
+final class SyntheticBoxes {
+
+    static final int PAGE_WIDTH = 2550;
+    static final int PAGE_HEIGHT = 3300;
+    static final int BOXES_PER_PAGE = 2000;
+    static final int COLUMNS = 80;
+
+    static final int BOX_WIDTH = 20;
+    static final int BOX_HEIGHT = 30;
+    static final int CELL_WIDTH = 30;
+    static final int CELL_HEIGHT = 120;
+    static final int MARGIN = 50;
+
+    private static final String[] CHARS = "a b c d e f g h i j k l m n o p q r s t u v w x y z A B C D E F G H I J K L M N O P Q R S T U V W X Y Z 0 1 2 3 4 5 6 7 8 9 ệ ở ữ ά ж ש".split(" ");
+
+    private SyntheticBoxes() {
+    }
+
+    static int pageCount(int boxCount) {
+        return (boxCount + BOXES_PER_PAGE - 1) / BOXES_PER_PAGE;
+    }
+
+    static String character(int i) {
+        return CHARS[i % CHARS.length];
+    }
+
+    /**
+     * Gets the bounds of the box at a position within its page.
+     *
+     * @param i index of the box within the page, or within a single tall page
+     * @return box bounds, in top-left coordinates
+     */
+    static Rectangle2D rect(int i) {
+        int col = i % COLUMNS;
+        int row = i / COLUMNS;
+        return new Rectangle2D(MARGIN + col * CELL_WIDTH, MARGIN + row * CELL_HEIGHT, BOX_WIDTH, BOX_HEIGHT);
+    }
+
+    /**
+     * Creates box file text in Tesseract 3.0x format.
+     *
+     * @param boxCount
+     * @return box file content
+     */
+    static String boxText(int boxCount) {
+        StringBuilder sb = new StringBuilder(boxCount * 24);
+        for (int i = 0; i < boxCount; i++) {
+            Rectangle2D rect = rect(i % BOXES_PER_PAGE);
+            sb.append(character(i)).append(' ')
+                    .append((int) rect.getMinX()).append(' ')
+                    .append((int) (PAGE_HEIGHT - rect.getMaxY())).append(' ')
+                    .append((int) rect.getMaxX()).append(' ')
+                    .append((int) (PAGE_HEIGHT - rect.getMinY())).append(' ')
+                    .append(i / BOXES_PER_PAGE).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates boxes split into pages.
+     *
+     * @param boxCount
+     * @return boxes of each page
+     */
+    static List<TessBoxCollection> pages(int boxCount) {
+        List<TessBoxCollection> pages = new ArrayList<TessBoxCollection>();
+        for (int i = 0; i < boxCount; i++) {
+            short page = (short) (i / BOXES_PER_PAGE);
+            if (page == pages.size()) {
+                pages.add(new TessBoxCollection());
+            }
+            pages.get(page).add(new TessBox(character(i), rect(i % BOXES_PER_PAGE), page));
+        }
+        return pages;
+    }
+
+    /**
+     * Creates boxes on a single page tall enough to hold them all.
+     *
+     * @param boxCount
+     * @param duplicateEvery if positive, every that many boxes repeat the
+     * bounds of the previous box, to be combined
+     * @return boxes
+     */
+    static TessBoxCollection collection(int boxCount, int duplicateEvery) {
+        List<TessBox> boxes = new ArrayList<TessBox>(boxCount);
+        int position = 0;
+        for (int i = 0; i < boxCount; i++) {
+            boolean duplicate = duplicateEvery > 0 && i > 0 && i % duplicateEvery == 0;
+            if (!duplicate) {
+                position++;
+            }
+            boxes.add(new TessBox(character(i), rect(position - 1), (short) 0));
+        }
+        TessBoxCollection boxCol = new TessBoxCollection();
+        boxCol.toList().setAll(boxes);
+        return boxCol;
+    }
+
+    /**
+     * Gets the height of the single page of a <code>collection</code>.
+     */
+    static int collectionHeight(int boxCount) {
+        return MARGIN * 2 + ((boxCount + COLUMNS - 1) / COLUMNS) * CELL_HEIGHT;
+    }
+
+    /**
+     * Gets the height of each page of <code>pages</code>.
+     */
+    static int[] pageHeights(int pageCount) {
+        int[] heights = new int[pageCount];
+        Arrays.fill(heights, PAGE_HEIGHT);
+        return heights;
+    }
+}
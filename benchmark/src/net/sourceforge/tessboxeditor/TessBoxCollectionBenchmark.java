@@ -0,0 +1,109 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.sourceforge.tessboxeditor.datamodel.TessBox;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries and bulk operations on the boxes of a page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class TessBoxCollectionBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int boxCount;
+
+    TessBoxCollection boxes;
+    double[] xs = new double[POINTS];
+    double[] ys = new double[POINTS];
+    int next;
+
+    @Setup
+    public void setup() {
+        boxes = SyntheticBoxes.collection(boxCount, 0);
+
+        // select one box in a hundred
+        List<TessBox> list = boxes.toList();
+        for (int i = 0; i < list.size(); i += 100) {
+            list.get(i).setSelected(true);
+        }
+
+        Random random = new Random(42);
+        int height = SyntheticBoxes.collectionHeight(boxCount);
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = random.nextInt(SyntheticBoxes.PAGE_WIDTH);
+            ys[i] = random.nextInt(height);
+        }
+    }
+
+    @Benchmark
+    public TessBox hitObject() {
+        int i = next++ & (POINTS - 1);
+        return boxes.hitObject(xs[i], ys[i]);
+    }
+
+    @Benchmark
+    public List<TessBox> getSelectedBoxes() {
+        return boxes.getSelectedBoxes();
+    }
+
+    /**
+     * Combining modifies the boxes, so each call gets a fresh page, with 100
+     * boxes spread over it repeating the bounds of the box before.
+     */
+    @State(Scope.Thread)
+    public static class CombineState {
+
+        TessBoxCollection boxes;
+
+        @Setup(Level.Invocation)
+        public void setup(TessBoxCollectionBenchmark benchmark) {
+            boxes = SyntheticBoxes.collection(benchmark.boxCount, benchmark.boxCount / 100);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 10)
+    public TessBoxCollection combineBoxes(CombineState state) {
+        state.boxes.combineBoxes();
+        return state.boxes;
+    }
+}
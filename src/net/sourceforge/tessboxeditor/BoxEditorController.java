@@ -16,29 +16,35 @@
 package net.sourceforge.tessboxeditor;
 
 import java.awt.image.BufferedImage;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
@@ -57,7 +63,6 @@ import javafx.geometry.Rectangle2D;
 import javafx.scene.Cursor;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert.AlertType;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -73,9 +78,10 @@ import javafx.scene.text.Font;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
-import net.sourceforge.tess4j.util.ImageIOHelper;
 import net.sourceforge.tessboxeditor.control.ImageCanvas;
+import net.sourceforge.tessboxeditor.datamodel.BoxEditHistory;
 import net.sourceforge.tessboxeditor.datamodel.TessBox;
 import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
 import net.sourceforge.tessboxeditor.utilities.*;
@@ -149,31 +155,38 @@ public class BoxEditorController implements Initializable {
     @FXML
     private TableColumn<TessBox, String> tcChar;
     @FXML
-    private TableColumn<TessBox, Integer> tcX;
+    private TableColumn<TessBox, Number> tcX;
     @FXML
-    private TableColumn<TessBox, Integer> tcY;
+    private TableColumn<TessBox, Number> tcY;
     @FXML
-    private TableColumn<TessBox, Integer> tcWidth;
+    private TableColumn<TessBox, Number> tcWidth;
     @FXML
-    private TableColumn<TessBox, Integer> tcHeight;
+    private TableColumn<TessBox, Number> tcHeight;
     @FXML
     private TableColumn<TessBox, Integer> tcNum;
 
     private static final String IMAGE_PATTERN = "([^\\s]+(\\.(?i)(png|tif|tiff))$)";
     protected ResourceBundle bundle;
     final Preferences prefs = MainController.prefs;
+    protected final BoxEditHistory history = new BoxEditHistory(prefs.getLong("undoMemoryLimit", BoxEditHistory.DEFAULT_MEMORY_LIMIT));
 
     private File boxFile;
     protected String currentDirectory, outputDirectory;
     protected List<TessBoxCollection> boxPages;
     protected TessBoxCollection boxes; // boxes of current page
-    private short imageIndex;
+    protected short imageIndex;
     private int filterIndex;
     protected List<BufferedImage> imageList;
     private boolean isTess2_0Format;
-    private BooleanProperty boxChangedProp;
+    protected BooleanProperty boxChangedProp;
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(daemonThreadFactory("BoxFileSave")); // saves and journal writes, in order
+    private volatile boolean saveFailed;
+    private int autoSaveInterval; // seconds; 0 turns auto-save off
+    private Timeline autoSaveTimeline;
+    private final Map<TessBoxCollection, Long> journaledCounts = new IdentityHashMap<TessBoxCollection, Long>(); // modification count of pages last written to the journal
     protected boolean tableSelectAction;
-    static final String EOL = System.getProperty("line.separator");
+    private ObservableList<TessBox> tableItems; // boxes shown in the table
+    private final ListChangeListener<TessBox> tableItemsListener = change -> boxChangedProp.set(true);
     final String[] headers = {"Char", "X", "Y", "Width", "Height"};
 
     ObservableList<ExtensionFilter> fileFilters; //extensionFilters
@@ -183,6 +196,12 @@ public class BoxEditorController implements Initializable {
     protected static int scaleFactor = 4;
 
     Image image;
+    private static final long MAX_GLYPH_CACHE_PIXELS = 4 * 1024 * 1024;
+    private final Map<Rectangle2D, Image> glyphCache = new LinkedHashMap<Rectangle2D, Image>(16, 0.75f, true); // scaled box images, least recently shown first
+    private long glyphCachePixels;
+    private Image glyphCacheImage; // page image, margin and scale of the cached images
+    private int glyphCacheMargin;
+    private int glyphCacheScale;
 
     private final StringProperty fontFamily = new SimpleStringProperty(Font.getDefault().getFamily());
     private final IntegerProperty fontSize = new SimpleIntegerProperty((int) Font.getDefault().getSize());
@@ -213,9 +232,13 @@ public class BoxEditorController implements Initializable {
             stackPaneBoxView.setStyle("-fx-background-color: LightGray;");
         }
 
+        imageCanvas.setScrollPane(scrollPaneImage);
+
         boxChangedProp = new SimpleBooleanProperty();
         btnSave.disableProperty().bind(boxChangedProp.not());
 
+        setAutoSaveInterval(prefs.getInt("autoSaveInterval", 0));
+
         bundle = ResourceBundle.getBundle("net.sourceforge.tessboxeditor.Gui"); // NOI18N
         fc = new FileChooser();
         fc.setTitle("Open Image File");
@@ -234,9 +257,14 @@ public class BoxEditorController implements Initializable {
 
         tfCharacter.focusedProperty().addListener((obs, wasFocused, isNowFocused) -> {
             if (!isNowFocused && !this.btnConvert.isFocused()) {
-                if (boxes != null && boxes.getSelectedBoxes().size() == 1) {
+                if (boxes != null && boxes.getSelectedCount() == 1) {
                     String str = tfCharacter.getText();
-                    boxes.getSelectedBoxes().get(0).setCharacter(str);
+                    TessBox box = boxes.getSelectedBoxes().get(0);
+                    if (str != null && !str.equals(box.getCharacter())) {
+                        history.addCharacterChange(imageIndex, boxes.indexOf(box), box.getCharacter(), str);
+                        boxChangedProp.set(true);
+                    }
+                    box.setCharacter(str);
                     tfChar.setText(str);
                     tfCodepointValue.setText(Utils.toHex(str));
                 }
@@ -254,15 +282,18 @@ public class BoxEditorController implements Initializable {
             if (newSelection != null) {
                 int selectedIndex = tableView.getSelectionModel().getSelectedIndex();
                 if (selectedIndex != -1) {
+                    ObservableList<TessBox> boxesOfCurPage = boxes.toList(); // boxes of current page
+                    List<TessBox> selectedBoxes = tableView.getSelectionModel().getSelectedItems();
                     if (!imageCanvas.isBoxClickAction()) { // not from image block click
-                        boxes.deselectAll();
+                        // only boxes whose selection changes need be redrawn
+                        boxes.setSelectedBoxes(selectedBoxes);
+                    } else {
+                        for (TessBox box : selectedBoxes) {
+                            box.setSelected(true);
+                        }
                     }
-                    ObservableList<TessBox> boxesOfCurPage = boxes.toList(); // boxes of current page
-                    for (int index : tableView.getSelectionModel().getSelectedIndices()) {
-                        TessBox box = boxesOfCurPage.get(index);
-                        // select box
-                        box.setSelected(true);
-                        scrollRectToVisible(scrollPaneImage, box.getRect());
+                    if (!selectedBoxes.isEmpty()) {
+                        scrollRectToVisible(scrollPaneImage, selectedBoxes.get(selectedBoxes.size() - 1).getRect());
                     }
                     imageCanvas.paint();
 
@@ -321,38 +352,38 @@ public class BoxEditorController implements Initializable {
             }
         });
 
-        tcChar.setCellValueFactory(new PropertyValueFactory<TessBox, String>("character"));
+        // cells bind to box properties, which are only created for rows shown
+        tcChar.setCellValueFactory(features -> features.getValue().characterProperty());
         tcChar.setCellFactory(TextFieldTableCell.forTableColumn());
         tcChar.setOnEditCommit(new EventHandler<TableColumn.CellEditEvent<TessBox, String>>() {
             @Override
             public void handle(TableColumn.CellEditEvent<TessBox, String> e) {
                 String str = e.getNewValue();
-                ((TessBox) e.getTableView().getItems().get(e.getTablePosition().getRow())).setCharacter(str);
+                int row = e.getTablePosition().getRow();
+                ((TessBox) e.getTableView().getItems().get(row)).setCharacter(str);
+                if (str != null && !str.equals(e.getOldValue())) {
+                    history.addCharacterChange(imageIndex, row, e.getOldValue(), str);
+                    boxChangedProp.set(true);
+                }
                 tfCharacter.setText(str);
                 tfChar.setText(str);
                 tfCodepointValue.setText(Utils.toHex(str));
             }
         });
-        tcX.setCellValueFactory(new PropertyValueFactory<TessBox, Integer>("x"));
-        tcY.setCellValueFactory(new PropertyValueFactory<TessBox, Integer>("y"));
-        tcWidth.setCellValueFactory(new PropertyValueFactory<TessBox, Integer>("width"));
-        tcHeight.setCellValueFactory(new PropertyValueFactory<TessBox, Integer>("height"));
-
-        tcNum.setCellValueFactory(column -> new ReadOnlyObjectWrapper<Integer>(tableView.getItems().indexOf(column.getValue()) + 1));
-        // alternatively
-//        tcNum.setCellFactory(new Callback<TableColumn, TableCell>() {
-//            @Override
-//            public TableCell call(TableColumn p) {
-//                return new TableCell() {
-//                    @Override
-//                    public void updateItem(Object item, boolean empty) {
-//                        super.updateItem(item, empty);
-//                        setGraphic(null);
-//                        setText(empty ? null : String.valueOf(getIndex() + 1));
-//                    }
-//                };
-//            }
-//        });
+        tcX.setCellValueFactory(features -> features.getValue().xProperty());
+        tcY.setCellValueFactory(features -> features.getValue().yProperty());
+        tcWidth.setCellValueFactory(features -> features.getValue().widthProperty());
+        tcHeight.setCellValueFactory(features -> features.getValue().heightProperty());
+
+        // row number is the index of the cell; cells are updated when rows move
+        tcNum.setCellFactory(column -> new TableCell<TessBox, Integer>() {
+            @Override
+            protected void updateItem(Integer item, boolean empty) {
+                super.updateItem(item, empty);
+                setGraphic(null);
+                setText(empty ? null : String.valueOf(getIndex() + 1));
+            }
+        });
 
         spBoxImage.setOnDragOver(new EventHandler<DragEvent>() {
             @Override
@@ -443,6 +474,14 @@ public class BoxEditorController implements Initializable {
         Menu fileMenu = menuBar.getMenus().get(0);
         FilteredList<MenuItem> menuItems = fileMenu.getItems().filtered(item -> item.getId().equals("miSave"));
         menuItems.get(0).disableProperty().bind(this.btnSave.disabledProperty());
+        Menu editMenu = menuBar.getMenus().get(1);
+        for (MenuItem item : editMenu.getItems()) {
+            if ("miUndo".equals(item.getId())) {
+                item.disableProperty().bind(history.canUndoProperty().not());
+            } else if ("miRedo".equals(item.getId())) {
+                item.disableProperty().bind(history.canRedoProperty().not());
+            }
+        }
     }
 
     @FXML
@@ -501,9 +540,13 @@ public class BoxEditorController implements Initializable {
                 handleAction(new ActionEvent(tfCharacter, null));
             }
         } else if (event.getSource() == tfCharacter) {
-            if (boxes.getSelectedBoxes().size() == 1) {
+            if (boxes != null && boxes.getSelectedCount() == 1) {
                 String str = tfCharacter.getText();
-                boxes.getSelectedBoxes().get(0).setCharacter(str);
+                TessBox box = boxes.getSelectedBoxes().get(0);
+                if (str != null && !str.equals(box.getCharacter())) {
+                    history.addCharacterChange(imageIndex, boxes.indexOf(box), box.getCharacter(), str);
+                }
+                box.setCharacter(str);
                 tfChar.setText(str);
                 tfCodepointValue.setText(Utils.toHex(str));
                 boxChangedProp.set(true);
@@ -512,7 +555,7 @@ public class BoxEditorController implements Initializable {
             if (imageList == null) {
                 return;
             }
-            int pageHeight = imageList.get(imageIndex).getHeight();
+            int pageHeight = getPageHeights()[imageIndex];
             String[] items = this.tfFind.getText().split("\\s+");
             try {
                 TessBox findBox;
@@ -538,7 +581,7 @@ public class BoxEditorController implements Initializable {
                 }
 
                 if (findBox != null) {
-                    int index = boxes.toList().indexOf(findBox);
+                    int index = boxes.indexOf(findBox);
                     this.tableView.getSelectionModel().clearAndSelect(index);
                     this.tableView.scrollTo(index > 10 ? index - 4 : index);
                 } else {
@@ -557,7 +600,7 @@ public class BoxEditorController implements Initializable {
             return;
         }
         TessBox selectedBox = null;
-        if (boxes.getSelectedBoxes().size() == 1) {
+        if (boxes.getSelectedCount() == 1) {
             selectedBox = boxes.getSelectedBoxes().get(0);
         }
         if (selectedBox != null) {
@@ -578,6 +621,7 @@ public class BoxEditorController implements Initializable {
 
             Rectangle2D newRect = new Rectangle2D(x, y, w, h);
             if (!selectedBox.getRect().equals(newRect)) {
+                history.addMove(imageIndex, boxes.indexOf(selectedBox), selectedBox.getRect(), newRect);
                 selectedBox.setRect(newRect);
                 boxChangedProp.set(true);
                 imageCanvas.paint();
@@ -588,14 +632,45 @@ public class BoxEditorController implements Initializable {
         }
     }
 
+    /**
+     * Reverts the last box edit, going to its page if needed.
+     */
+    void undo() {
+        applyHistory(history.getUndoPage(), true);
+    }
+
+    /**
+     * Reapplies the last reverted box edit, going to its page if needed.
+     */
+    void redo() {
+        applyHistory(history.getRedoPage(), false);
+    }
+
+    private void applyHistory(short page, boolean undo) {
+        if (page < 0 || imageList == null) {
+            return;
+        }
+        if (page != imageIndex) {
+            paginationPage.setCurrentPageIndex(page); // loads the image and boxes of the page
+        }
+        int index = undo ? history.undo(boxPages) : history.redo(boxPages);
+        boxChangedProp.set(true);
+        // reselect to refresh readout
+        tableView.getSelectionModel().clearSelection();
+        if (index >= 0 && boxes != null && index < boxes.toList().size()) {
+            tableView.getSelectionModel().select(index);
+            tableView.scrollTo(index > 10 ? index - 4 : index);
+        }
+        imageCanvas.paint();
+    }
+
     /**
      * Draws bounding box for individual box view.
      *
      * @param newRect
      */
     void updateSubimage(Rectangle2D newRect) {
-        Image subImage = ImageUtils.getSubimage(image, newRect, iconMargin);
-        Image rescaledImage = ImageUtils.resample(subImage, scaleFactor);
+        Image rescaledImage = getGlyphImage(newRect);
         charImageView.setImage(rescaledImage);
         charImageView.setFitWidth(rescaledImage.getWidth());
         charImageView.setFitHeight(rescaledImage.getHeight());
@@ -605,6 +680,41 @@ public class BoxEditorController implements Initializable {
         charRectangle.setHeight(rescaledImage.getHeight() - iconMargin * scaleFactor * 2);
     }
 
+    /**
+     * Gets the scaled image of a box for the box view. Recently shown boxes are
+     * cached, up to a total number of pixels, so that stepping back and forth
+     * through boxes does not crop and scale again.
+     *
+     * @param rect box bounds
+     * @return scaled image, with margin
+     */
+    private Image getGlyphImage(Rectangle2D rect) {
+        if (glyphCacheImage != image || glyphCacheMargin != iconMargin || glyphCacheScale != scaleFactor) {
+            glyphCache.clear();
+            glyphCachePixels = 0;
+            glyphCacheImage = image;
+            glyphCacheMargin = iconMargin;
+            glyphCacheScale = scaleFactor;
+        }
+
+        Image glyphImage = glyphCache.get(rect);
+        if (glyphImage == null) {
+            glyphImage = ImageUtils.resample(ImageUtils.getSubimage(image, rect, iconMargin), scaleFactor);
+            glyphCache.put(rect, glyphImage);
+            glyphCachePixels += pixels(glyphImage);
+            Iterator<Image> eldest = glyphCache.values().iterator();
+            while (glyphCachePixels > MAX_GLYPH_CACHE_PIXELS && glyphCache.size() > 1) {
+                glyphCachePixels -= pixels(eldest.next());
+                eldest.remove();
+            }
+        }
+        return glyphImage;
+    }
+
+    private static long pixels(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight();
+    }
+
     /**
      * Open image and box file.
      *
@@ -637,14 +747,19 @@ public class BoxEditorController implements Initializable {
 
     void readImageFile(File selectedFile) {
         try {
-            imageList = ImageIOHelper.getImageList(selectedFile);
-            if (imageList == null) {
-                new Alert(Alert.AlertType.ERROR, bundle.getString("Cannotloadimage")).show();
-                return;
-            }
+            // pages are decoded on demand
+            List<BufferedImage> oldImageList = imageList;
+            imageList = new PagedImageList(selectedFile);
             imageIndex = 0;
 
             Platform.runLater(() -> {
+                if (oldImageList instanceof PagedImageList) {
+                    try {
+                        ((PagedImageList) oldImageList).close();
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, e.getMessage(), e);
+                    }
+                }
                 paginationPage.setPageCount(imageList.size());
                 paginationPage.setCurrentPageIndex(0);
                 loadImage();
@@ -663,19 +778,21 @@ public class BoxEditorController implements Initializable {
     }
 
     void loadBoxes(File boxFile) {
+        history.clear();
         if (boxFile.exists()) {
             try {
-                boxPages.clear();
-
-                // load into textarea first
-                String content = readBoxFile(boxFile);
-                boxPages = parseBoxString(content, imageList);
+                // index the file; boxes are materialized only for the page shown
+                BoxPageList pages = BoxPageList.open(boxFile, getPageHeights());
+                isTess2_0Format = pages.isTess2_0Format();
+                pages.get(imageIndex);
+                boxPages = pages;
+                boxChangedProp.set(false);
 
                 Platform.runLater(() -> {
-                    this.taBoxData.setText(content);
+                    journaledCounts.clear();
+                    recoverJournal(boxFile, pages);
                     loadTable();
                 });
-                boxChangedProp.set(false);
             } catch (OutOfMemoryError oome) {
                 logger.log(Level.SEVERE, oome.getMessage(), oome);
                 new Alert(Alert.AlertType.NONE, oome.getMessage(), ButtonType.OK).showAndWait();
@@ -686,66 +803,67 @@ public class BoxEditorController implements Initializable {
                 }
             }
         } else {
-            // clear table and box display
-            tableView.setItems(null);
-            taBoxData.setText(null);
-            imageCanvas.setBoxes(null);
-            imageCanvas.setTable(null);
-            imageCanvas.paint();
+            clearTable();
         }
     }
 
-    String readBoxFile(File boxFile) throws IOException {
-        return new String(Files.readAllBytes(Paths.get(boxFile.getPath())), StandardCharsets.UTF_8);
+    /**
+     * Clears the table and box display.
+     */
+    void clearTable() {
+        boxes = null;
+        if (tableItems != null) {
+            tableItems.removeListener(tableItemsListener);
+            tableItems = null;
+        }
+        tableView.setItems(null);
+        taBoxData.setText(null);
+        imageCanvas.setBoxes(null);
+        imageCanvas.setTable(null);
+        imageCanvas.paint();
     }
 
-    List<TessBoxCollection> parseBoxString(String boxStr, List<BufferedImage> imageList) throws IOException {
-        List<TessBoxCollection> allBoxPages = new ArrayList<TessBoxCollection>();
+    /**
+     * Gets the height of each page image.
+     *
+     * @return page heights
+     */
+    int[] getPageHeights() {
+        return getPageHeights(imageList);
+    }
 
-        String[] boxdata = boxStr.split("\\R"); // or "\\r?\\n"
-        if (boxdata.length > 0) {
-            // if only 5 fields, it's Tess 2.0x format
-            isTess2_0Format = boxdata[0].split("\\s+").length == 5;
+    /**
+     * Gets the height of each page image. Heights of a
+     * <code>PagedImageList</code> are read without decoding the pages.
+     *
+     * @param imageList page images
+     * @return page heights
+     */
+    static int[] getPageHeights(List<BufferedImage> imageList) {
+        if (imageList instanceof PagedImageList) {
+            return ((PagedImageList) imageList).getPageHeights();
         }
-
-        int startBoxIndex = 0;
-
-        for (int curPage = 0; curPage < imageList.size(); curPage++) {
-            TessBoxCollection boxCol = new TessBoxCollection();
-            // Note that the coordinate system used in the box file has (0,0) at the bottom-left.
-            // On computer graphics device, (0,0) is defined as top-left.
-            int pageHeight = imageList.get(curPage).getHeight();
-            for (int i = startBoxIndex; i < boxdata.length; i++) {
-                String[] items = boxdata[i].split("(?<!^) +");
-
-                // skip invalid data
-                if (items.length < 5 || items.length > 6) {
-                    continue;
-                }
-
-                String chrs = items[0];
-                int x = Integer.parseInt(items[1]);
-                int y = Integer.parseInt(items[2]);
-                int w = Integer.parseInt(items[3]) - x;
-                int h = Integer.parseInt(items[4]) - y;
-                y = pageHeight - y - h; // flip the y-coordinate
-
-                short page;
-                if (items.length == 6) {
-                    page = Short.parseShort(items[5]); // Tess 3.0x format
-                } else {
-                    page = 0; // Tess 2.0x format
-                }
-                if (page > curPage) {
-                    startBoxIndex = i; // mark begin of next page
-                    break;
-                }
-                boxCol.add(new TessBox(chrs, new Rectangle2D(x, y, w, h), page));
-            }
-            allBoxPages.add(boxCol); // add the last page
+        int[] pageHeights = new int[imageList.size()];
+        for (int i = 0; i < pageHeights.length; i++) {
+            pageHeights[i] = imageList.get(i).getHeight();
         }
+        return pageHeights;
+    }
 
-        return allBoxPages;
+    /**
+     * Creates daemon threads, so that pending work does not keep the
+     * application alive.
+     */
+    static ThreadFactory daemonThreadFactory(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static String readBoxFile(File boxFile) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(boxFile.getPath())), StandardCharsets.UTF_8);
     }
 
     /**
@@ -765,6 +883,7 @@ public class BoxEditorController implements Initializable {
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.get() == ButtonType.YES) {
+            discardJournal();
             return true;
         } else {
             return false;
@@ -789,8 +908,10 @@ public class BoxEditorController implements Initializable {
 
         Optional<ButtonType> result = alert.showAndWait();
         if (result.get() == ButtonType.YES) {
-            return saveAction();
+            // the document is about to be replaced, so the save must be complete
+            return saveAction() && awaitSaves();
         } else if (result.get() == ButtonType.NO) {
+            discardJournal();
             return true;
         } else {
             return false;
@@ -820,6 +941,9 @@ public class BoxEditorController implements Initializable {
         File f = fc.showSaveDialog(btnSave.getScene().getWindow());
         if (f != null) {
             outputDirectory = f.getParent();
+            if (boxFile != null) {
+                discardJournal(); // changes go to the new file
+            }
             boxFile = f;
             return saveBoxFile(boxFile);
         } else {
@@ -827,39 +951,188 @@ public class BoxEditorController implements Initializable {
         }
     }
 
+    /**
+     * Saves the boxes to a box file. The boxes are taken as they are now, then
+     * written in the background, to a temporary file that replaces the box
+     * file once complete. A failure is reported when the save completes.
+     *
+     * @param file box file
+     * @return true
+     */
     boolean saveBoxFile(File file) {
         try {
-            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
-                out.write(formatOutputString(imageList, boxPages));
-            }
+            final List<TessBoxCollection> savedPages = boxPages;
+            final int[] pageHeights = getPageHeights();
+            final boolean tess2_0Format = isTess2_0Format;
+            final BoxFileSnapshot snapshot = new BoxFileSnapshot(savedPages, pageHeights);
             boxChangedProp.set(false);
+
+            saveExecutor.submit(() -> {
+                try {
+                    snapshot.save(file, tess2_0Format);
+                    new BoxFileJournal(file).delete(); // compacted into the box file
+                    // reindex the saved file; pages being edited are taken over when back on the FX thread
+                    BoxPageList pages = savedPages instanceof BoxPageList ? BoxPageList.open(file, pageHeights) : null;
+                    saveFailed = false;
+                    Platform.runLater(() -> {
+                        if (pages != null && boxPages == savedPages) {
+                            pages.takeOver((BoxPageList) savedPages, snapshot.getCounts());
+                            boxPages = pages;
+                            journaledCounts.clear();
+                        }
+                    });
+                } catch (Exception | OutOfMemoryError e) {
+                    logger.log(Level.SEVERE, e.getMessage(), e);
+                    saveFailed = true;
+                    Platform.runLater(() -> {
+                        if (boxPages == savedPages) {
+                            boxChangedProp.set(true);
+                            new Alert(Alert.AlertType.ERROR, String.valueOf(e.getMessage())).show();
+                        } else {
+                            // another document is open by now
+                            new Alert(Alert.AlertType.ERROR, file.getName() + " was not saved: " + e.getMessage()).show();
+                        }
+                    });
+                }
+            });
         } catch (OutOfMemoryError oome) {
             logger.log(Level.SEVERE, oome.getMessage(), oome);
             new Alert(Alert.AlertType.NONE, oome.getMessage(), ButtonType.OK).showAndWait();
-        } catch (FileNotFoundException fnfe) {
-            logger.log(Level.SEVERE, fnfe.getMessage(), fnfe);
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, e.getMessage(), e);
-        } finally {
-
         }
 
         return true;
     }
 
-    String formatOutputString(List<BufferedImage> imageList, List<TessBoxCollection> boxPages) {
-        StringBuilder sb = new StringBuilder();
-        for (short pageIndex = 0; pageIndex < imageList.size(); pageIndex++) {
-            int pageHeight = ((BufferedImage) imageList.get(pageIndex)).getHeight(); // each page (in an image) can have different height
-            for (TessBox box : boxPages.get(pageIndex).toList()) {
-                Rectangle2D rect = box.getRect();
-                sb.append(String.format("%s %.0f %.0f %.0f %.0f %d", box.getCharacter(), rect.getMinX(), pageHeight - rect.getMinY() - rect.getHeight(), rect.getMinX() + rect.getWidth(), pageHeight - rect.getMinY(), pageIndex)).append(EOL);
+    /**
+     * Waits for saves in progress to complete.
+     *
+     * @return false if the last save failed
+     */
+    boolean awaitSaves() {
+        try {
+            saveExecutor.submit(() -> {
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        return !saveFailed;
+    }
+
+    /**
+     * Sets how often changes are written to the journal of the box file, from
+     * which they can be recovered after a crash.
+     *
+     * @param seconds interval in seconds; 0 turns auto-save off
+     */
+    void setAutoSaveInterval(int seconds) {
+        if (autoSaveTimeline != null) {
+            autoSaveTimeline.stop();
+            autoSaveTimeline = null;
+        }
+        if (seconds > 0) {
+            autoSaveTimeline = new Timeline(new KeyFrame(Duration.seconds(seconds), e -> autoSave()));
+            autoSaveTimeline.setCycleCount(Animation.INDEFINITE);
+            autoSaveTimeline.play();
+        }
+        autoSaveInterval = seconds;
+    }
+
+    /**
+     * Gets the auto-save interval.
+     *
+     * @return interval in seconds; 0 if auto-save is off
+     */
+    int getAutoSaveInterval() {
+        return autoSaveInterval;
+    }
+
+    /**
+     * Appends the pages changed since the last auto-save to the journal of the
+     * box file.
+     */
+    void autoSave() {
+        if (boxFile == null || !boxChangedProp.get() || !(boxPages instanceof BoxPageList)) {
+            return;
+        }
+
+        BoxPageList pages = (BoxPageList) boxPages;
+        List<Integer> changed = new ArrayList<Integer>();
+        for (int i = 0; i < pages.size(); i++) {
+            TessBoxCollection boxCol = pages.getLoaded(i);
+            if (boxCol != null && pages.isModified(i)) {
+                Long journaled = journaledCounts.get(boxCol);
+                if (journaled == null || journaled != boxCol.getModificationCount()) {
+                    changed.add(i);
+                }
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        int[] pageIndices = new int[changed.size()];
+        for (int k = 0; k < pageIndices.length; k++) {
+            pageIndices[k] = changed.get(k);
+        }
+        BoxFileSnapshot snapshot = new BoxFileSnapshot(pages, getPageHeights(), pageIndices);
+        journaledCounts.putAll(snapshot.getCounts());
+        BoxFileJournal journal = new BoxFileJournal(boxFile);
+        saveExecutor.submit(() -> {
+            try {
+                journal.append(snapshot);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, e.getMessage(), e);
             }
+        });
+    }
+
+    /**
+     * Deletes the journal of the box file, once its changes are no longer
+     * wanted.
+     */
+    private void discardJournal() {
+        journaledCounts.clear();
+        saveFailed = false; // including changes a failed save left unsaved
+        if (boxFile != null) {
+            saveExecutor.submit(new BoxFileJournal(boxFile)::delete);
         }
-        if (isTess2_0Format) {
-            return sb.toString().replace(" 0" + EOL, EOL); // strip the ending zeroes
+    }
+
+    /**
+     * Offers to restore the changes left in the journal of a box file by a
+     * session that did not end normally.
+     *
+     * @param boxFile box file
+     * @param pages pages just loaded from the box file
+     */
+    private void recoverJournal(File boxFile, BoxPageList pages) {
+        BoxFileJournal journal = new BoxFileJournal(boxFile);
+        if (!journal.exists()) {
+            return;
         }
-        return sb.toString();
+
+        try {
+            Map<Integer, TessBoxCollection> changes = journal.read(getPageHeights());
+            if (changes != null && !changes.isEmpty()) {
+                Alert alert = new Alert(AlertType.CONFIRMATION, JTessBoxEditor.APP_NAME, ButtonType.YES, ButtonType.NO);
+                alert.setTitle(JTessBoxEditor.APP_NAME);
+                alert.setHeaderText(null);
+                alert.setContentText(bundle.getString("Do_you_want_to_recover_the_unsaved_changes_to_") + boxFile.getName() + "?");
+
+                Optional<ButtonType> result = alert.showAndWait();
+                if (result.isPresent() && result.get() == ButtonType.YES) {
+                    for (Map.Entry<Integer, TessBoxCollection> change : changes.entrySet()) {
+                        pages.set(change.getKey(), change.getValue());
+                        journaledCounts.put(change.getValue(), change.getValue().getModificationCount());
+                    }
+                    boxChangedProp.set(true);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+        saveExecutor.submit(journal::delete);
     }
 
     void loadImage() {
@@ -873,20 +1146,39 @@ public class BoxEditorController implements Initializable {
 
     void loadTable() {
         if (!this.boxPages.isEmpty()) {
-            boxes = this.boxPages.get(imageIndex);
+            try {
+                boxes = this.boxPages.get(imageIndex); // pages of a box file are parsed when first shown
+            } catch (NumberFormatException e) {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+                clearTable();
+                if (boxPages instanceof BoxPageList) {
+                    taBoxData.setText(((BoxPageList) boxPages).getPageText(imageIndex));
+                }
+                if (e.getMessage() != null) {
+                    new Alert(Alert.AlertType.NONE, e.getMessage(), ButtonType.OK).showAndWait();
+                }
+                return;
+            }
+            if (boxPages instanceof BoxPageList) {
+                BoxPageList pages = (BoxPageList) boxPages;
+                if (!boxChangedProp.get()) {
+                    pages.release(imageIndex); // other pages are decoded again when shown
+                }
+                taBoxData.setText(pages.getPageText(imageIndex));
+            }
             boxes.deselectAll();
             tableSelectAction = true;
             paginationBox.setPageCount(boxes.toList().size());
             paginationBox.setDisable(true);
             tableSelectAction = false;
-            tableView.setItems(boxes.toList());
+            // one listener, moved to the boxes shown
+            if (tableItems != null) {
+                tableItems.removeListener(tableItemsListener);
+            }
+            tableItems = boxes.toList();
+            tableItems.addListener(tableItemsListener);
+            tableView.setItems(tableItems);
             tableView.getSelectionModel().clearSelection();
-            boxes.toList().addListener(new ListChangeListener<TessBox>() {
-                @Override
-                public void onChanged(ListChangeListener.Change change) {
-                    boxChangedProp.set(true);
-                }
-            });
             imageCanvas.setBoxes(boxes);
             imageCanvas.setTable(tableView);
             imageCanvas.paint();
@@ -1001,6 +1293,7 @@ public class BoxEditorController implements Initializable {
         }
 
         prefs.putInt("filterIndex", filterIndex);
+        prefs.putInt("autoSaveInterval", autoSaveInterval);
     }
 
 }
@@ -17,12 +17,22 @@ package net.sourceforge.tessboxeditor;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -44,9 +54,9 @@ import javafx.stage.StageStyle;
 import net.sourceforge.tess4j.ITessAPI;
 import net.sourceforge.tess4j.ITesseract;
 import net.sourceforge.tess4j.Tesseract;
-import net.sourceforge.tess4j.util.ImageIOHelper;
 import net.sourceforge.tessboxeditor.datamodel.TessBox;
 import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+import net.sourceforge.tessboxeditor.utilities.PagedImageList;
 
 public class BoxEditorEditController extends BoxEditorController {
 
@@ -109,10 +119,12 @@ public class BoxEditorEditController extends BoxEditorController {
         short page = 0;
         int index = 0;
 
+        history.beginCompound(imageIndex);
         for (TessBox box : selected) {
             chrs += box.getCharacter();
             page = box.getPage();
-            index = this.boxes.toList().indexOf(box);
+            index = this.boxes.indexOf(box);
+            history.addRemove(imageIndex, index, box);
             Rectangle2D rect = box.getRect();
             minX = Math.min(minX, rect.getMinX());
             minY = Math.min(minY, rect.getMinY());
@@ -124,8 +136,10 @@ public class BoxEditorEditController extends BoxEditorController {
         if (chrs.length() > 0) {
             TessBox newBox = new TessBox(chrs, new Rectangle2D(minX, minY, maxX - minX, maxY - minY), page);
             boxes.add(index, newBox);
+            history.addInsert(imageIndex, index, newBox);
             this.tableView.getSelectionModel().clearAndSelect(index);
         }
+        history.endCompound();
 
         this.imageCanvas.paint();
     }
@@ -154,7 +168,7 @@ public class BoxEditorEditController extends BoxEditorController {
 //        }
 
         TessBox box = selected.get(0);
-        int index = this.boxes.toList().indexOf(box);
+        int index = this.boxes.indexOf(box);
         Rectangle2D rect = box.getRect();
         double w = rect.getWidth();
         double h = rect.getHeight();
@@ -167,10 +181,15 @@ public class BoxEditorEditController extends BoxEditorController {
         }
 
         // reduce size of 1st box
-        box.setRect(new Rectangle2D(rect.getMinX(), rect.getMinY(), w, h));
+        Rectangle2D newRect = new Rectangle2D(rect.getMinX(), rect.getMinY(), w, h);
+        history.beginCompound(imageIndex);
+        history.addMove(imageIndex, index, rect, newRect);
+        box.setRect(newRect);
 
         TessBox newBox = new TessBox(box.getCharacter(), new Rectangle2D(rect.getMinX() + w, rect.getMinY(), w, h), box.getPage());
         boxes.add(index + 1, newBox);
+        history.addInsert(imageIndex, index + 1, newBox);
+        history.endCompound();
 //        Rectangle2D newRect = newBox.getRect();
 //        double x = newRect.getMinX();
 //        double y = newRect.getMinY();
@@ -201,11 +220,12 @@ public class BoxEditorEditController extends BoxEditorController {
         }
 
         TessBox box = selected.get(0);
-        int index = this.boxes.toList().indexOf(box);
+        int index = this.boxes.indexOf(box);
         index++;
         // offset the new box 15 pixel from the base one
         TessBox newBox = new TessBox(" ", new Rectangle2D(box.getX() + 15, box.getY(), box.getWidth(), box.getHeight()), box.getPage());
         boxes.add(index, newBox);
+        history.addInsert(imageIndex, index, newBox);
         tableView.getSelectionModel().clearAndSelect(index);
         this.imageCanvas.paint();
     }
@@ -222,9 +242,14 @@ public class BoxEditorEditController extends BoxEditorController {
         }
 
         this.tableView.getSelectionModel().clearSelection();
-        for (TessBox box : selected) {
-            this.boxes.remove(box);
+        // record from the last box, so each recorded index holds when replayed in order
+        history.beginCompound(imageIndex);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            TessBox box = selected.get(i);
+            history.addRemove(imageIndex, boxes.indexOf(box), box);
         }
+        history.endCompound();
+        this.boxes.removeAll(selected);
 
         resetReadout();
         this.imageCanvas.paint();
@@ -233,6 +258,7 @@ public class BoxEditorEditController extends BoxEditorController {
     void markEOLAction(ActionEvent evt) {
         this.tableView.getScene().setCursor(javafx.scene.Cursor.WAIT);
         this.imageCanvas.setCursor(javafx.scene.Cursor.WAIT);
+        boxChangedProp.set(true); // keep pages loaded while the worker edits them
 
         // instantiate task for OCR
         ocrSegmentWorker = new OcrSegmentWorker(imageList, boxPages);
@@ -279,17 +305,21 @@ public class BoxEditorEditController extends BoxEditorController {
 
         @Override
         protected Void call() throws Exception {
-            ITesseract instance = new Tesseract();
             String tessDirectory = ((TextField) btnMarkEOL.getScene().lookup("#tfTessDir")).getText();
-            String tessdataPath = MainController.WINDOWS ? tessDirectory + "/tessdata" : "/usr/share/tesseract-ocr/4.00/tessdata";
-            instance.setDatapath(tessdataPath);
-            performSegment(imageList, boxPages, instance);
+            final String tessdataPath = MainController.WINDOWS ? tessDirectory + "/tessdata" : "/usr/share/tesseract-ocr/4.00/tessdata";
+            performSegment(imageList, boxPages, () -> {
+                ITesseract instance = new Tesseract();
+                instance.setDatapath(tessdataPath);
+                return instance;
+            });
             return null;
         }
 
         @Override
         protected void succeeded() {
             super.succeeded();
+            boxChangedProp.set(true);
+            history.clear(); // inserted EOL boxes are not recorded
             resetReadout();
             loadTable();
             tableView.getScene().setCursor(javafx.scene.Cursor.DEFAULT);
@@ -317,39 +347,45 @@ public class BoxEditorEditController extends BoxEditorController {
 
         @Override
         protected Void call() throws Exception {
-            int progress = 0;
-            updateProgress(0, 100);
-            ITesseract instance = new Tesseract();
+            updateProgress(0, files.size());
             String tessDirectory = ((TextField) btnMarkEOL.getScene().lookup("#tfTessDir")).getText();
-            String tessdataPath = MainController.WINDOWS ? tessDirectory + "/tessdata" : "/usr/share/tesseract-ocr/4.00/tessdata";
-            instance.setDatapath(tessdataPath);
-
-            int tick = (int) Math.ceil(100f / files.size());
-            for (File imageFile : files) {
-                if (isCancelled()) {
-                    updateMessage("Cancelled");
-                    break;
-                }
+            final String tessdataPath = MainController.WINDOWS ? tessDirectory + "/tessdata" : "/usr/share/tesseract-ocr/4.00/tessdata";
 
-                int lastDot = imageFile.getName().lastIndexOf(".");
-                File boxFile = new File(imageFile.getParentFile(), imageFile.getName().substring(0, lastDot) + ".box");
-                if (!boxFile.exists()) {
-                    continue;
-                }
+            // Tesseract instances are not thread-safe; each pool thread gets its own
+            final ThreadLocal<ITesseract> instances = ThreadLocal.withInitial(() -> {
+                ITesseract instance = new Tesseract();
+                instance.setDatapath(tessdataPath);
+                return instance;
+            });
 
-                List<BufferedImage> imageList = ImageIOHelper.getImageList(imageFile);
-                String str = readBoxFile(boxFile);
-                List<TessBoxCollection> boxPages = parseBoxString(str, imageList);
-                performSegment(imageList, boxPages, instance);
+            int nThreads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(nThreads, daemonThreadFactory("MarkEOL"));
+            CompletionService<File> completionService = new ExecutorCompletionService<File>(executor);
 
-                // save boxes
-                try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(boxFile), StandardCharsets.UTF_8))) {
-                    out.write(formatOutputString(imageList, boxPages));
+            try {
+                for (File imageFile : files) {
+                    completionService.submit(() -> {
+                        markEOL(imageFile, instances.get(), this::isCancelled);
+                        return imageFile;
+                    });
                 }
 
-                progress += tick;
-                updateProgress(Math.min(progress, 100), 100);
-                updateMessage(imageFile.getName());
+                // files complete in any order; progress counts finished ones
+                for (int done = 1; done <= files.size(); done++) {
+                    File imageFile = completionService.take().get();
+                    updateProgress(done, files.size());
+                    updateMessage(imageFile.getName());
+                }
+            } catch (InterruptedException e) {
+                if (!isCancelled()) {
+                    throw e;
+                }
+                updateMessage("Cancelled");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            } finally {
+                executor.shutdownNow(); // stops files not yet started
             }
             return null;
         }
@@ -381,29 +417,199 @@ public class BoxEditorEditController extends BoxEditorController {
         }
     }
 
-    void performSegment(final List<BufferedImage> imageList, final List<TessBoxCollection> boxPages, final ITesseract instance) throws Exception {
-        short pageIndex = 0;
-        for (BufferedImage image : imageList) {
+    /**
+     * Inserts EOL tabs in the box file of an image. Does not need the editor,
+     * so it is also used in batch mode.
+     *
+     * @param imageFile
+     * @param instance Tesseract instance confined to the calling thread
+     * @param cancelled whether to stop and leave the box file untouched
+     * @return false if there is no box file or the work was cancelled
+     * @throws Exception
+     */
+    static boolean markEOL(File imageFile, ITesseract instance, BooleanSupplier cancelled) throws Exception {
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+
+        int lastDot = imageFile.getName().lastIndexOf(".");
+        File boxFile = new File(imageFile.getParentFile(), imageFile.getName().substring(0, lastDot) + ".box");
+        if (!boxFile.exists()) {
+            return false;
+        }
+
+        try (PagedImageList imageList = new PagedImageList(imageFile, 1)) {
+            String str = readBoxFile(boxFile);
+            // the format is per file; the editor's own flag belongs to the file being edited
+            BoxFileParser parser = new BoxFileParser();
+            List<TessBoxCollection> boxPages = parser.parse(str, getPageHeights(imageList));
+            performSegment(imageList, boxPages, instance);
+
+            if (cancelled.getAsBoolean()) {
+                return false; // leave the file untouched
+            }
+
+            // save boxes
+            try (BoxFileWriter out = BoxFileWriter.open(boxFile, parser.isTess2_0Format())) {
+                out.writePages(boxPages, getPageHeights(imageList));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts a tab box after the last box of each text line, segmenting the
+     * pages one after another.
+     *
+     * @param imageList page images
+     * @param boxPages boxes of each page
+     * @param instance Tesseract instance confined to the calling thread
+     * @throws Exception
+     */
+    static void performSegment(final List<BufferedImage> imageList, final List<TessBoxCollection> boxPages, final ITesseract instance) throws Exception {
+        for (short pageIndex = 0; pageIndex < imageList.size(); pageIndex++) {
             // Perform text-line segmentation
-            List<Rectangle> regions = instance.getSegmentedRegions(image, ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE);
-            TessBoxCollection boxesPerPage = boxPages.get(pageIndex); // boxes per page
-            for (Rectangle rect : regions) { // process each line
-                Rectangle2D rect2d = new Rectangle2D(rect.getMinX(), rect.getMinY(), rect.getWidth(), rect.getHeight());
-                TessBox lastBox = boxesPerPage.toList().stream().filter((r) -> {
-                    return rect2d.contains(r.getRect());
-                }).reduce((first, second) -> second).orElse(null);
-
-                if (lastBox == null) {
+            List<Rectangle> regions = instance.getSegmentedRegions(imageList.get(pageIndex), ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE);
+            insertEOL(boxPages.get(pageIndex), regions, pageIndex); // boxes per page
+        }
+    }
+
+    /**
+     * Inserts a tab box after the last box of each text line, segmenting the
+     * pages in parallel. Tabs are inserted page by page, in page order, as
+     * segmentation results become available.
+     *
+     * @param imageList page images
+     * @param boxPages boxes of each page
+     * @param instances creates a Tesseract instance for each segmenting thread
+     * @throws Exception
+     */
+    void performSegment(final List<BufferedImage> imageList, final List<TessBoxCollection> boxPages, final Supplier<ITesseract> instances) throws Exception {
+        if (imageList.isEmpty()) {
+            return;
+        }
+
+        final ThreadLocal<ITesseract> instance = ThreadLocal.withInitial(instances);
+        int nThreads = Math.min(imageList.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, daemonThreadFactory("Segment"));
+
+        try {
+            List<Future<List<Rectangle>>> results = new ArrayList<Future<List<Rectangle>>>();
+            for (int i = 0; i < imageList.size(); i++) {
+                final int pageIndex = i;
+                results.add(executor.submit(() -> instance.get().getSegmentedRegions(imageList.get(pageIndex), ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE)));
+            }
+
+            for (short pageIndex = 0; pageIndex < imageList.size(); pageIndex++) {
+                insertEOL(boxPages.get(pageIndex), results.get(pageIndex).get(), pageIndex);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Inserts a tab box after the last box, in list order, lying within each
+     * text line. Lines are processed in the order given, and a tab already
+     * inserted for one line counts as a box of any later line containing it.
+     * <p>
+     * Boxes are assigned to lines in one sweep down the page, with boxes and
+     * lines sorted by top edge.
+     *
+     * @param boxesPerPage boxes of the page
+     * @param regions text lines
+     * @param pageIndex page index
+     */
+    static void insertEOL(TessBoxCollection boxesPerPage, List<Rectangle> regions, short pageIndex) {
+        ObservableList<TessBox> boxList = boxesPerPage.toList();
+        int lineCount = regions.size();
+        Rectangle2D[] lines = new Rectangle2D[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            Rectangle rect = regions.get(i);
+            lines[i] = new Rectangle2D(rect.getMinX(), rect.getMinY(), rect.getWidth(), rect.getHeight());
+        }
+
+        // index of the last box within each line
+        int[] lastBox = new int[lineCount];
+        Arrays.fill(lastBox, -1);
+        Integer[] boxOrder = new Integer[boxList.size()];
+        for (int i = 0; i < boxOrder.length; i++) {
+            boxOrder[i] = i;
+        }
+        Arrays.sort(boxOrder, Comparator.comparingDouble(i -> boxList.get(i).getRect().getMinY()));
+        Integer[] lineOrder = new Integer[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            lineOrder[i] = i;
+        }
+        Arrays.sort(lineOrder, Comparator.comparingDouble(i -> lines[i].getMinY()));
+
+        List<Integer> activeLines = new ArrayList<Integer>(); // lines begun and not yet passed
+        int nextLine = 0;
+        for (int boxIndex : boxOrder) {
+            Rectangle2D rect = boxList.get(boxIndex).getRect();
+            while (nextLine < lineCount && lines[lineOrder[nextLine]].getMinY() <= rect.getMinY()) {
+                activeLines.add(lineOrder[nextLine++]);
+            }
+            activeLines.removeIf(line -> lines[line].getMaxY() < rect.getMinY());
+            for (int line : activeLines) {
+                if (boxIndex > lastBox[line] && lines[line].contains(rect)) {
+                    lastBox[line] = boxIndex;
+                }
+            }
+        }
+
+        // tabs following each box, in list order
+        Map<Integer, List<TessBox>> tabsAfter = new HashMap<Integer, List<TessBox>>();
+        List<TessBox> tabs = new ArrayList<TessBox>();
+        List<Integer> tabAnchors = new ArrayList<Integer>(); // index of the box each tab follows
+
+        for (int line = 0; line < lineCount; line++) {
+            int anchor = lastBox[line];
+            int position = -1; // among the tabs following the anchor; -1 is the anchor itself
+            TessBox lastInLine = anchor == -1 ? null : boxList.get(anchor);
+
+            for (int t = 0; t < tabs.size(); t++) {
+                TessBox tab = tabs.get(t);
+                if (!lines[line].contains(tab.getRect())) {
                     continue;
                 }
+                int tabAnchor = tabAnchors.get(t);
+                int tabPosition = tabsAfter.get(tabAnchor).indexOf(tab);
+                if (tabAnchor > anchor || (tabAnchor == anchor && tabPosition > position)) {
+                    anchor = tabAnchor;
+                    position = tabPosition;
+                    lastInLine = tab;
+                }
+            }
+
+            if (lastInLine == null) {
+                continue;
+            }
+
+            Rectangle2D rect2 = lastInLine.getRect();
+            Rectangle2D nRect = new Rectangle2D(rect2.getMaxX() + 10, rect2.getMinY(), rect2.getWidth(), rect2.getHeight());
+            TessBox tab = new TessBox("\t", nRect, pageIndex);
+            tabsAfter.computeIfAbsent(anchor, k -> new ArrayList<TessBox>()).add(position + 1, tab);
+            tabs.add(tab);
+            tabAnchors.add(anchor);
+        }
+
+        if (tabs.isEmpty()) {
+            return;
+        }
 
-                int index = boxesPerPage.toList().indexOf(lastBox);
-                Rectangle2D rect2 = lastBox.getRect();
-                Rectangle2D nRect = new Rectangle2D(rect2.getMaxX() + 10, rect2.getMinY(), rect2.getWidth(), rect2.getHeight());
-                boxesPerPage.add(index + 1, new TessBox("\t", nRect, pageIndex));
+        List<TessBox> merged = new ArrayList<TessBox>(boxList.size() + tabs.size());
+        for (int i = 0; i < boxList.size(); i++) {
+            merged.add(boxList.get(i));
+            List<TessBox> following = tabsAfter.get(i);
+            if (following != null) {
+                merged.addAll(following);
             }
-            pageIndex++;
         }
+        boxList.setAll(merged);
     }
 
     public class ProgressMonitor {
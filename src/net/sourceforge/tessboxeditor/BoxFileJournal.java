@@ -0,0 +1,155 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+
+/**
+ * Journal of unsaved changes to a box file, kept next to it.
+ * <p>
+ * Each auto-save appends only the pages changed since the previous one, so its
+ * cost does not depend on the size of the box file. A full save of the box file
+ * supersedes the journal, which is then deleted. The journal records the size
+ * and modification time of the box file it applies to, and is ignored if the
+ * box file has changed since.
+ * <p>
+ * Format: a <code>base &lt;size&gt; &lt;modified&gt;</code> line, then for
+ * each page written a <code>page &lt;index&gt; &lt;count&gt;</code> line,
+ * its boxes in box file format and an <code>end</code> line. The last record
+ * of a page wins.
+ */
+class BoxFileJournal {
+
+    static final String SUFFIX = ".journal";
+
+    private final File boxFile;
+    private final File file;
+
+    private final static Logger logger = Logger.getLogger(BoxFileJournal.class.getName());
+
+    /**
+     * Creates the journal of a box file.
+     *
+     * @param boxFile box file
+     */
+    BoxFileJournal(File boxFile) {
+        this.boxFile = boxFile;
+        this.file = new File(boxFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Whether there is a journal.
+     *
+     * @return true if the journal file exists
+     */
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Appends pages to the journal, creating it if needed. The journal is
+     * forced to disk before returning.
+     *
+     * @param changes changed pages, copied box by box
+     * @throws IOException
+     */
+    void append(BoxFileSnapshot changes) throws IOException {
+        boolean create = !file.exists();
+        try (FileOutputStream fos = new FileOutputStream(file, true);
+                BoxFileWriter out = new BoxFileWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8), false)) {
+            if (create) {
+                out.writeText("base " + boxFile.length() + " " + boxFile.lastModified() + BoxFileWriter.EOL);
+            }
+            for (int k = 0; k < changes.getPageCount(); k++) {
+                out.writeText("page " + changes.getPageIndex(k) + " " + changes.getBoxCount(k) + BoxFileWriter.EOL);
+                changes.writePage(out, k);
+                out.writeText("end" + BoxFileWriter.EOL);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * Reads the latest boxes of each page in the journal. An incomplete last
+     * record, left by an interrupted append, is ignored.
+     *
+     * @param pageHeights height of each page image
+     * @return boxes of each page in the journal, or <code>null</code> if the
+     * journal does not apply to the box file as it is now
+     * @throws IOException
+     */
+    Map<Integer, TessBoxCollection> read(int[] pageHeights) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null || !line.equals("base " + boxFile.length() + " " + boxFile.lastModified())) {
+                return null;
+            }
+
+            Map<Integer, String> records = new HashMap<Integer, String>();
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length != 3 || !fields[0].equals("page")) {
+                    break;
+                }
+                int index = Integer.parseInt(fields[1]);
+                int count = Integer.parseInt(fields[2]);
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < count && (line = in.readLine()) != null; i++) {
+                    sb.append(line).append('\n');
+                }
+                if (!"end".equals(in.readLine())) {
+                    break; // cut short
+                }
+                records.put(index, sb.toString());
+            }
+
+            BoxFileParser parser = new BoxFileParser();
+            Map<Integer, TessBoxCollection> pages = new HashMap<Integer, TessBoxCollection>();
+            for (Map.Entry<Integer, String> record : records.entrySet()) {
+                int index = record.getKey();
+                if (index >= 0 && index < pageHeights.length) {
+                    pages.put(index, parser.parsePage(record.getValue(), pageHeights[index]));
+                }
+            }
+            return pages;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid journal: " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Deletes the journal.
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+}
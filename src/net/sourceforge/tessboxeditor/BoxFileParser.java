@@ -0,0 +1,290 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.geometry.Rectangle2D;
+import net.sourceforge.tessboxeditor.datamodel.TessBox;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+
+/**
+ * Parses box file content in a single pass. Lines and fields are located by
+ * scanning the characters in place; only the character field of each box is
+ * materialized as a <code>String</code>.
+ */
+public class BoxFileParser {
+
+    private static final int MAX_FIELDS = 6;
+    private static final String[] charStrings = new String[Character.MAX_VALUE + 1]; // shared strings of single characters
+
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private boolean tess2_0Format;
+
+    /**
+     * Parses box data into one box collection per page.
+     *
+     * @param boxStr box file content
+     * @param pageHeights height of each page image, needed to flip the
+     * y-coordinates
+     * @return boxes of each page
+     */
+    public List<TessBoxCollection> parse(CharSequence boxStr, int[] pageHeights) {
+        List<TessBoxCollection> allBoxPages = new ArrayList<TessBoxCollection>(pageHeights.length);
+        for (int i = 0; i < pageHeights.length; i++) {
+            allBoxPages.add(new TessBoxCollection());
+        }
+
+        int length = boxStr.length();
+        int lineStart = 0;
+        int curPage = 0;
+        boolean firstLine = true;
+        tess2_0Format = false;
+
+        while (lineStart < length && curPage < pageHeights.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && !isLineTerminator(boxStr.charAt(lineEnd))) {
+                lineEnd++;
+            }
+
+            if (firstLine) {
+                // if only 5 fields, it's Tess 2.0x format
+                tess2_0Format = countWhitespaceFields(boxStr, lineStart, lineEnd) == 5;
+                firstLine = false;
+            }
+
+            int count = tokenize(boxStr, lineStart, lineEnd);
+
+            // skip invalid data
+            if (count == 5 || count == 6) {
+                short page;
+                if (count == 6) {
+                    page = parseShort(boxStr, fieldStart[5], fieldEnd[5]); // Tess 3.0x format
+                } else {
+                    page = 0; // Tess 2.0x format
+                }
+                if (page > curPage) {
+                    curPage = page; // begin of next page
+                }
+
+                if (curPage < pageHeights.length) {
+                    allBoxPages.get(curPage).add(createBox(boxStr, page, pageHeights[curPage]));
+                }
+            }
+
+            lineStart = skipLineTerminator(boxStr, lineEnd);
+        }
+
+        return allBoxPages;
+    }
+
+    /**
+     * Parses the box data of a single page. All valid lines are taken to
+     * belong to the page, regardless of their page field.
+     *
+     * @param boxStr box data of the page
+     * @param pageHeight height of the page image
+     * @return boxes of the page
+     */
+    public TessBoxCollection parsePage(CharSequence boxStr, int pageHeight) {
+        TessBoxCollection boxCol = new TessBoxCollection();
+
+        int length = boxStr.length();
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && !isLineTerminator(boxStr.charAt(lineEnd))) {
+                lineEnd++;
+            }
+
+            int count = tokenize(boxStr, lineStart, lineEnd);
+
+            // skip invalid data
+            if (count == 5 || count == 6) {
+                short page = count == 6 ? parseShort(boxStr, fieldStart[5], fieldEnd[5]) : 0;
+                boxCol.add(createBox(boxStr, page, pageHeight));
+            }
+
+            lineStart = skipLineTerminator(boxStr, lineEnd);
+        }
+
+        return boxCol;
+    }
+
+    /**
+     * Whether the last parsed content is in Tess 2.0x (5-field) format.
+     *
+     * @return true if there is no page field
+     */
+    public boolean isTess2_0Format() {
+        return tess2_0Format;
+    }
+
+    /**
+     * Creates a box from the fields of the last tokenized line.
+     */
+    private TessBox createBox(CharSequence s, short page, int pageHeight) {
+        int x = parseInt(s, fieldStart[1], fieldEnd[1]);
+        int y = parseInt(s, fieldStart[2], fieldEnd[2]);
+        int w = parseInt(s, fieldStart[3], fieldEnd[3]) - x;
+        int h = parseInt(s, fieldStart[4], fieldEnd[4]) - y;
+        // Note that the coordinate system used in the box file has (0,0) at the bottom-left.
+        // On computer graphics device, (0,0) is defined as top-left.
+        y = pageHeight - y - h; // flip the y-coordinate
+        String chrs = toCharacter(s, fieldStart[0], fieldEnd[0]);
+        return new TessBox(chrs, new Rectangle2D(x, y, w, h), page);
+    }
+
+    /**
+     * Gets the character value of a box. Boxes of a single character, by far
+     * the most common, share one string per character.
+     */
+    private static String toCharacter(CharSequence s, int start, int end) {
+        if (end - start != 1) {
+            return s.subSequence(start, end).toString();
+        }
+        char c = s.charAt(start);
+        String str = charStrings[c];
+        if (str == null) {
+            str = String.valueOf(c);
+            charStrings[c] = str; // a race only creates an extra copy
+        }
+        return str;
+    }
+
+    /**
+     * Locates the fields of a box line. Fields are separated by runs of
+     * spaces; the first character always belongs to the character field,
+     * which may itself be a space.
+     *
+     * @return number of fields found, or <code>MAX_FIELDS + 1</code> if there
+     * are too many
+     */
+    private int tokenize(CharSequence s, int start, int end) {
+        if (start == end) {
+            return 1;
+        }
+
+        int count = 0;
+        fieldStart[count] = start;
+        int i = start + 1;
+        while (true) {
+            while (i < end && s.charAt(i) != ' ') {
+                i++;
+            }
+            fieldEnd[count++] = i;
+            while (i < end && s.charAt(i) == ' ') {
+                i++;
+            }
+            if (i == end) {
+                return count;
+            }
+            if (count == MAX_FIELDS) {
+                return MAX_FIELDS + 1;
+            }
+            fieldStart[count] = i;
+        }
+    }
+
+    /**
+     * Counts fields delimited by whitespace, including an empty leading field
+     * for a line that begins with whitespace.
+     */
+    private static int countWhitespaceFields(CharSequence s, int start, int end) {
+        int count = 0;
+        boolean inField = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t') {
+                if (i == start) {
+                    count++;
+                }
+                inField = false;
+            } else if (!inField) {
+                count++;
+                inField = true;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u000B' || c == '\f' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static int skipLineTerminator(CharSequence s, int pos) {
+        if (pos < s.length() && s.charAt(pos) == '\r' && pos + 1 < s.length() && s.charAt(pos + 1) == '\n') {
+            return pos + 2;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Parses a decimal integer in place, with the same rules as
+     * <code>Integer.parseInt</code>.
+     */
+    static int parseInt(CharSequence s, int start, int end) {
+        if (start >= end) {
+            throw numberFormatException(s, start, end);
+        }
+
+        int i = start;
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+        char first = s.charAt(i);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+            } else if (first != '+') {
+                throw numberFormatException(s, start, end);
+            }
+            if (end - start == 1) {
+                throw numberFormatException(s, start, end);
+            }
+            i++;
+        }
+
+        int multmin = limit / 10;
+        int result = 0;
+        while (i < end) {
+            int digit = Character.digit(s.charAt(i++), 10);
+            if (digit < 0 || result < multmin) {
+                throw numberFormatException(s, start, end);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(s, start, end);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    static short parseShort(CharSequence s, int start, int end) {
+        int i = parseInt(s, start, end);
+        if (i < Short.MIN_VALUE || i > Short.MAX_VALUE) {
+            throw new NumberFormatException("Value out of range. Value:\"" + s.subSequence(start, end) + "\" Radix:10");
+        }
+        return (short) i;
+    }
+
+    private static NumberFormatException numberFormatException(CharSequence s, int start, int end) {
+        return new NumberFormatException("For input string: \"" + s.subSequence(start, end) + "\"");
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import net.sourceforge.tessboxeditor.datamodel.BoxColumns;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+
+/**
+ * Boxes of a set of pages as they are at one point in time, so that they can be
+ * written on a background thread while editing goes on.
+ * <p>
+ * Pages of a <code>BoxPageList</code> that are unchanged since they were
+ * loaded are kept as ranges of the box file and copied as they are; only
+ * changed pages are copied box by box. A snapshot must be taken on the thread
+ * that edits the boxes.
+ */
+class BoxFileSnapshot {
+
+    private final int[] pageIndices;
+    private final ByteBuffer[] pageBytes; // file content of unchanged pages
+    private final BoxColumns[] columns; // boxes of other pages
+    private final Map<TessBoxCollection, Long> counts = new IdentityHashMap<TessBoxCollection, Long>();
+
+    /**
+     * Takes a snapshot of all pages.
+     *
+     * @param boxPages boxes of each page
+     * @param pageHeights height of each page image; also gives the number of
+     * pages
+     */
+    BoxFileSnapshot(List<TessBoxCollection> boxPages, int[] pageHeights) {
+        this(boxPages, pageHeights, allPages(pageHeights.length), true);
+    }
+
+    /**
+     * Takes a snapshot of some pages, copied box by box.
+     *
+     * @param boxPages boxes of each page
+     * @param pageHeights height of each page image
+     * @param pageIndices indices of the pages to take
+     */
+    BoxFileSnapshot(List<TessBoxCollection> boxPages, int[] pageHeights, int[] pageIndices) {
+        this(boxPages, pageHeights, pageIndices, false);
+    }
+
+    private BoxFileSnapshot(List<TessBoxCollection> boxPages, int[] pageHeights, int[] pageIndices, boolean copyUnchanged) {
+        int n = pageIndices.length;
+        this.pageIndices = pageIndices;
+        this.pageBytes = new ByteBuffer[n];
+        this.columns = new BoxColumns[n];
+
+        BoxPageList pageList = boxPages instanceof BoxPageList ? (BoxPageList) boxPages : null;
+        for (int k = 0; k < n; k++) {
+            int index = pageIndices[k];
+            if (pageList != null && copyUnchanged && !pageList.isModified(index)) {
+                pageBytes[k] = pageList.getPageBytes(index);
+                continue;
+            }
+
+            TessBoxCollection boxCol = index < boxPages.size() ? boxPages.get(index) : new TessBoxCollection();
+            columns[k] = BoxColumns.of(boxCol, pageHeights[index]);
+            counts.put(boxCol, boxCol.getModificationCount());
+        }
+    }
+
+    private static int[] allPages(int count) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+
+    /**
+     * Gets the pages copied box by box, with their modification counts at the
+     * time of the snapshot.
+     *
+     * @return modification count of each copied page
+     */
+    Map<TessBoxCollection, Long> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Gets the number of pages taken.
+     *
+     * @return page count
+     */
+    int getPageCount() {
+        return pageIndices.length;
+    }
+
+    /**
+     * Gets the index of a page taken.
+     *
+     * @param k position in the snapshot
+     * @return page index
+     */
+    int getPageIndex(int k) {
+        return pageIndices[k];
+    }
+
+    /**
+     * Gets the number of boxes of a page copied box by box.
+     *
+     * @param k position in the snapshot
+     * @return box count
+     */
+    int getBoxCount(int k) {
+        return columns[k].size();
+    }
+
+    /**
+     * Writes a page.
+     *
+     * @param out box writer
+     * @param k position in the snapshot
+     * @throws IOException
+     */
+    void writePage(BoxFileWriter out, int k) throws IOException {
+        if (pageBytes[k] != null) {
+            out.writeText(StandardCharsets.UTF_8.decode(pageBytes[k].duplicate()));
+        } else {
+            out.write(columns[k], pageIndices[k]);
+        }
+    }
+
+    /**
+     * Writes all pages taken.
+     *
+     * @param out box writer
+     * @throws IOException
+     */
+    void writeTo(BoxFileWriter out) throws IOException {
+        for (int k = 0; k < pageIndices.length; k++) {
+            writePage(out, k);
+        }
+    }
+
+    /**
+     * Saves the pages to a box file. The content is written to a temporary
+     * file next to it, forced to disk, then moved over the box file, so that
+     * the box file is either left as it was or completely replaced.
+     *
+     * @param file box file
+     * @param tess2_0Format whether to omit the page field
+     * @throws IOException
+     */
+    void save(File file, boolean tess2_0Format) throws IOException {
+        Path target = file.toPath();
+        Path temp = new File(file.getPath() + ".tmp").toPath();
+        try {
+            try (FileOutputStream fos = new FileOutputStream(temp.toFile());
+                    BoxFileWriter out = new BoxFileWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8), tess2_0Format)) {
+                writeTo(out);
+                out.flush();
+                fos.getFD().sync();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
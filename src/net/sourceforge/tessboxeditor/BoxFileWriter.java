@@ -0,0 +1,249 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import javafx.geometry.Rectangle2D;
+import net.sourceforge.tessboxeditor.datamodel.BoxColumns;
+import net.sourceforge.tessboxeditor.datamodel.TessBox;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+
+/**
+ * Writes boxes in box file format.
+ * <p>
+ * Lines are assembled in a reusable character buffer, with coordinates
+ * converted directly to digits, and the buffer is passed to the underlying
+ * writer whenever it fills up. The content of a file is never held in memory
+ * as a whole. Coordinates are rounded half up, as by <code>%.0f</code>.
+ */
+public class BoxFileWriter implements Closeable, Flushable {
+
+    static final String EOL = System.getProperty("line.separator");
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Writer out;
+    private final boolean tess2_0Format;
+    private final char[] buf = new char[BUFFER_SIZE];
+    private int count;
+
+    /**
+     * Creates a box writer.
+     *
+     * @param out destination
+     * @param tess2_0Format whether to omit the page field, as in Tess 2.0x
+     * format
+     */
+    public BoxFileWriter(Writer out, boolean tess2_0Format) {
+        this.out = out;
+        this.tess2_0Format = tess2_0Format;
+    }
+
+    /**
+     * Opens a box file for writing, in UTF-8.
+     *
+     * @param file box file
+     * @param tess2_0Format whether to omit the page field
+     * @return box writer
+     * @throws IOException
+     */
+    public static BoxFileWriter open(File file, boolean tess2_0Format) throws IOException {
+        return new BoxFileWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), tess2_0Format);
+    }
+
+    /**
+     * Writes the boxes of each page.
+     *
+     * @param boxPages boxes of each page
+     * @param pageHeights height of each page image; also gives the number of
+     * pages to write
+     * @throws IOException
+     */
+    public void writePages(List<TessBoxCollection> boxPages, int[] pageHeights) throws IOException {
+        for (int pageIndex = 0; pageIndex < pageHeights.length; pageIndex++) {
+            write(boxPages.get(pageIndex), pageHeights[pageIndex], pageIndex);
+        }
+    }
+
+    /**
+     * Writes the boxes of a page.
+     *
+     * @param boxCol boxes of the page
+     * @param pageHeight height of the page image
+     * @param pageIndex page index
+     * @throws IOException
+     */
+    public void write(TessBoxCollection boxCol, int pageHeight, int pageIndex) throws IOException {
+        for (TessBox box : boxCol.toList()) {
+            write(box, pageHeight, pageIndex);
+        }
+    }
+
+    /**
+     * Writes a box. Box files have the origin at the bottom left of the page.
+     *
+     * @param box
+     * @param pageHeight height of the page image
+     * @param pageIndex page index
+     * @throws IOException
+     */
+    public void write(TessBox box, int pageHeight, int pageIndex) throws IOException {
+        Rectangle2D rect = box.getRect();
+        append(box.getCharacter());
+        append(' ');
+        appendRounded(rect.getMinX());
+        append(' ');
+        appendRounded(pageHeight - rect.getMinY() - rect.getHeight());
+        append(' ');
+        appendRounded(rect.getMinX() + rect.getWidth());
+        append(' ');
+        appendRounded(pageHeight - rect.getMinY());
+        if (!tess2_0Format) {
+            append(' ');
+            appendLong(pageIndex, false);
+        }
+        append(EOL);
+    }
+
+    /**
+     * Writes boxes stored by column.
+     *
+     * @param columns boxes of the page, in box file coordinates
+     * @param pageIndex page index
+     * @throws IOException
+     */
+    public void write(BoxColumns columns, int pageIndex) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            append(columns.getCharacter(i));
+            append(' ');
+            appendInt(columns.getLeft(i));
+            append(' ');
+            appendInt(columns.getBottom(i));
+            append(' ');
+            appendInt(columns.getRight(i));
+            append(' ');
+            appendInt(columns.getTop(i));
+            if (!tess2_0Format) {
+                append(' ');
+                appendLong(pageIndex, false);
+            }
+            append(EOL);
+        }
+    }
+
+    /**
+     * Writes box file text as it is, such as a page copied from another box
+     * file.
+     *
+     * @param text box file lines
+     * @throws IOException
+     */
+    public void writeText(CharSequence text) throws IOException {
+        flushBuffer();
+        out.append(text);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    private void append(char c) throws IOException {
+        if (count == buf.length) {
+            flushBuffer();
+        }
+        buf[count++] = c;
+    }
+
+    private void append(String s) throws IOException {
+        int length = s.length();
+        if (length > buf.length - count) {
+            flushBuffer();
+            if (length > buf.length) {
+                out.write(s);
+                return;
+            }
+        }
+        s.getChars(0, length, buf, count);
+        count += length;
+    }
+
+    /**
+     * Appends a value rounded half up to an integer, with the sign kept for
+     * negative values that round to zero, the same as <code>%.0f</code>.
+     */
+    private void appendRounded(double value) throws IOException {
+        double abs = Math.abs(value);
+        long n = (long) abs;
+        if (abs - n >= 0.5) {
+            n++;
+        }
+        appendLong(n, Double.doubleToRawLongBits(value) < 0);
+    }
+
+    private void appendInt(int value) throws IOException {
+        appendLong(Math.abs((long) value), value < 0);
+    }
+
+    private void appendLong(long n, boolean negative) throws IOException {
+        if (count + 21 > buf.length) {
+            flushBuffer();
+        }
+        if (negative) {
+            buf[count++] = '-';
+        }
+        int end = count + digits(n);
+        int pos = end;
+        do {
+            buf[--pos] = (char) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        count = end;
+    }
+
+    private static int digits(long n) {
+        int digits = 1;
+        while (n >= 10) {
+            n /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
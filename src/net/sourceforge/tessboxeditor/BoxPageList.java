@@ -0,0 +1,359 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Map;
+import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+
+/**
+ * Pages of a box file, decoded on demand.
+ * <p>
+ * The file is memory-mapped and scanned once to locate the byte range of each
+ * page. The UTF-8 content of a page is decoded and its boxes materialized only
+ * when the page is requested. Decoded pages are cached until released, and
+ * changes to them are tracked, so that pages still as in the file can be
+ * copied as they are when saving. Pages may be requested from background
+ * tasks, such as Mark EOL, while the editor shows another page.
+ * <p>
+ * On Windows, a file cannot be replaced while it is mapped, so the content is
+ * read into a heap buffer instead.
+ */
+public class BoxPageList extends AbstractList<TessBoxCollection> {
+
+    private final ByteBuffer content;
+    private final int[] pageStart; // byte offset of each page; last entry marks end of data
+    private final int[] pageHeights;
+    private final TessBoxCollection[] pages;
+    private final long[] loadedCounts; // modification count of each page when it was last the same as in the file
+    private final boolean tess2_0Format;
+    private final char[] fieldChars = new char[16];
+
+    private BoxPageList(ByteBuffer content, int[] pageHeights) {
+        this.content = content;
+        this.pageHeights = pageHeights;
+        this.pageStart = new int[pageHeights.length + 1];
+        this.pages = new TessBoxCollection[pageHeights.length];
+        this.loadedCounts = new long[pageHeights.length];
+        this.tess2_0Format = index();
+    }
+
+    /**
+     * Opens a box file.
+     *
+     * @param boxFile box file
+     * @param pageHeights height of each page image
+     * @return pages of the box file
+     * @throws IOException
+     */
+    public static BoxPageList open(File boxFile, int[] pageHeights) throws IOException {
+        ByteBuffer content;
+        if (MainController.WINDOWS) {
+            content = ByteBuffer.wrap(Files.readAllBytes(boxFile.toPath()));
+        } else {
+            try (FileChannel channel = FileChannel.open(boxFile.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Box file is too large: " + boxFile.getName());
+                }
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        return new BoxPageList(content, pageHeights);
+    }
+
+    /**
+     * Gets the boxes of a page, decoding them if not already loaded.
+     *
+     * @param index page index
+     * @return boxes of the page
+     */
+    @Override
+    public synchronized TessBoxCollection get(int index) {
+        if (pages[index] == null) {
+            pages[index] = new BoxFileParser().parsePage(decode(index), pageHeights[index]);
+            loadedCounts[index] = pages[index].getModificationCount();
+        }
+        return pages[index];
+    }
+
+    /**
+     * Replaces the boxes of a page. The page is then taken as modified.
+     *
+     * @param index page index
+     * @param boxCol boxes of the page
+     * @return the previously loaded boxes, if any
+     */
+    @Override
+    public synchronized TessBoxCollection set(int index, TessBoxCollection boxCol) {
+        TessBoxCollection old = pages[index];
+        pages[index] = boxCol;
+        loadedCounts[index] = -1;
+        return old;
+    }
+
+    /**
+     * Whether the boxes of a page have been changed since they were loaded
+     * from the file.
+     *
+     * @param index page index
+     * @return true if the page is loaded and differs from the file
+     */
+    public synchronized boolean isModified(int index) {
+        return pages[index] != null && pages[index].getModificationCount() != loadedCounts[index];
+    }
+
+    /**
+     * Gets the loaded boxes of a page, without loading them.
+     *
+     * @param index page index
+     * @return boxes of the page, or <code>null</code> if not loaded
+     */
+    synchronized TessBoxCollection getLoaded(int index) {
+        return pages[index];
+    }
+
+    /**
+     * Gets the UTF-8 content of a page, as it is in the file. The buffer
+     * stays valid after the file is replaced.
+     *
+     * @param index page index
+     * @return read-only bytes of the page
+     */
+    ByteBuffer getPageBytes(int index) {
+        ByteBuffer slice = content.duplicate();
+        slice.limit(pageStart[index + 1]);
+        slice.position(pageStart[index]);
+        return slice.slice();
+    }
+
+    /**
+     * Takes over the loaded pages of another list for the same images, after
+     * its boxes have been saved to the file of this list, so that boxes being
+     * edited stay in use.
+     *
+     * @param old the list that was saved
+     * @param savedCounts modification count of each page that was written box
+     * by box, as of when it was written; other pages were copied from the file
+     * of <code>old</code>
+     */
+    synchronized void takeOver(BoxPageList old, Map<TessBoxCollection, Long> savedCounts) {
+        for (int i = 0; i < pages.length && i < old.pages.length; i++) {
+            TessBoxCollection boxCol = old.pages[i];
+            if (boxCol != null) {
+                Long count = savedCounts.get(boxCol);
+                pages[i] = boxCol;
+                loadedCounts[i] = count != null ? count : old.loadedCounts[i];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return pages.length;
+    }
+
+    /**
+     * Gets the box file text of a page, as it is in the file.
+     *
+     * @param index page index
+     * @return text of the page
+     */
+    public String getPageText(int index) {
+        return decode(index).toString();
+    }
+
+    /**
+     * Whether the box file is in Tess 2.0x (5-field) format.
+     *
+     * @return true if there is no page field
+     */
+    public boolean isTess2_0Format() {
+        return tess2_0Format;
+    }
+
+    /**
+     * Drops loaded pages other than the given one, since they can be decoded
+     * again from the file. Modified pages are kept.
+     *
+     * @param keepIndex index of the page to keep
+     */
+    public synchronized void release(int keepIndex) {
+        for (int i = 0; i < pages.length; i++) {
+            if (i != keepIndex && !isModified(i)) {
+                pages[i] = null;
+            }
+        }
+    }
+
+    private CharSequence decode(int index) {
+        return StandardCharsets.UTF_8.decode(getPageBytes(index));
+    }
+
+    /**
+     * Scans the content once and records where each page begins, following
+     * the same rules as <code>BoxFileParser.parse</code>.
+     *
+     * @return true if in Tess 2.0x format
+     */
+    private boolean index() {
+        int limit = content.limit();
+        int pos = 0;
+        int curPage = 0;
+        boolean tess2_0 = false;
+        int[] pageField = new int[2]; // start and end of page field
+
+        Arrays.fill(pageStart, limit);
+        pageStart[0] = 0;
+
+        while (pos < limit) {
+            int lineEnd = pos;
+            while (lineEnd < limit && terminatorLength(lineEnd) == 0) {
+                lineEnd++;
+            }
+
+            if (pos == 0) {
+                // if only 5 fields, it's Tess 2.0x format
+                tess2_0 = countWhitespaceFields(pos, lineEnd) == 5;
+            }
+
+            int count = tokenize(pos, lineEnd, pageField);
+            if (count == 6) {
+                int page = parsePageField(pageField[0], pageField[1]);
+                if (page > curPage) {
+                    int next = Math.min(page, pages.length);
+                    for (int p = curPage + 1; p <= next; p++) {
+                        pageStart[p] = pos;
+                    }
+                    if (page >= pages.length) {
+                        break; // no image page for the remaining boxes
+                    }
+                    curPage = page;
+                }
+            }
+
+            pos = lineEnd < limit ? lineEnd + terminatorLength(lineEnd) : limit;
+        }
+
+        return tess2_0;
+    }
+
+    /**
+     * Locates the fields of a line of UTF-8 bytes. Fields are separated by runs
+     * of spaces, except for the first byte, which always belongs to the
+     * character field. Continuation bytes of multibyte characters are never
+     * spaces, so the fields are the same as those of the decoded line.
+     *
+     * @return number of fields, up to 7
+     */
+    private int tokenize(int start, int end, int[] pageField) {
+        if (start == end) {
+            return 1;
+        }
+
+        int count = 0;
+        int i = start + 1;
+        while (true) {
+            int fieldStart = i;
+            while (i < end && content.get(i) != ' ') {
+                i++;
+            }
+            if (count == 5) {
+                pageField[0] = fieldStart;
+                pageField[1] = i;
+            }
+            count++;
+            while (i < end && content.get(i) == ' ') {
+                i++;
+            }
+            if (i == end || count == 7) {
+                return count;
+            }
+        }
+    }
+
+    private int countWhitespaceFields(int start, int end) {
+        int count = 0;
+        boolean inField = false;
+        for (int i = start; i < end; i++) {
+            byte b = content.get(i);
+            if (b == ' ' || b == '\t') {
+                if (i == start) {
+                    count++;
+                }
+                inField = false;
+            } else if (!inField) {
+                count++;
+                inField = true;
+            }
+        }
+        return count;
+    }
+
+    private short parsePageField(int start, int end) {
+        int length = end - start;
+        boolean ascii = length <= fieldChars.length;
+        for (int i = 0; ascii && i < length; i++) {
+            byte b = content.get(start + i);
+            ascii = b >= 0;
+            fieldChars[i] = (char) b;
+        }
+        if (ascii) {
+            return BoxFileParser.parseShort(CharBuffer.wrap(fieldChars, 0, length), 0, length);
+        }
+
+        ByteBuffer slice = content.duplicate();
+        slice.limit(end);
+        slice.position(start);
+        CharSequence field = StandardCharsets.UTF_8.decode(slice);
+        return BoxFileParser.parseShort(field, 0, field.length());
+    }
+
+    /**
+     * Gets the byte length of the line terminator at a position, or 0 if there
+     * is none. Recognizes the same terminators as <code>\R</code>.
+     */
+    private int terminatorLength(int pos) {
+        int limit = content.limit();
+        byte b = content.get(pos);
+        switch (b) {
+            case '\r':
+                return pos + 1 < limit && content.get(pos + 1) == '\n' ? 2 : 1;
+            case '\n':
+            case 0x0B:
+            case '\f':
+                return 1;
+            case (byte) 0xC2: // U+0085
+                return pos + 1 < limit && content.get(pos + 1) == (byte) 0x85 ? 2 : 0;
+            case (byte) 0xE2: // U+2028, U+2029
+                if (pos + 2 < limit && content.get(pos + 1) == (byte) 0x80) {
+                    byte b2 = content.get(pos + 2);
+                    return b2 == (byte) 0xA8 || b2 == (byte) 0xA9 ? 3 : 0;
+                }
+                return 0;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.awt.image.Raster;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the ink bounds of glyphs in a rendered page, given the layout cell of
+ * each glyph.
+ * <p>
+ * The page is scanned once, row by row, as runs of ink pixels. Runs are
+ * joined into connected components, and the part of each component that falls
+ * in each cell is recorded. A component belongs as a whole to the cell with
+ * most of its ink, including any overhang into a neighboring cell, as with
+ * italics; a component that spans much of more than one cell, such as touching
+ * letters, is split along the cell edges. Ink outside all cells is ignored.
+ */
+class GlyphBoxExtractor {
+
+    private final int[] cells;
+    private final int[] boxes;
+
+    // connected components, by label
+    private int[] parent = new int[256];
+    private int[] bounds = new int[256 * 4]; // left, top, right, bottom (exclusive)
+    private int labelCount;
+
+    // part of each component in each cell, keyed by label and cell
+    private final Map<Long, int[]> parts = new HashMap<Long, int[]>(); // left, top, right, bottom, pixel count
+
+    private GlyphBoxExtractor(int[] cells) {
+        this.cells = cells;
+        this.boxes = new int[cells.length];
+    }
+
+    /**
+     * Finds the ink bounds of glyphs.
+     *
+     * @param raster page image, black on white; a pixel is ink if its first
+     * sample is below half its range
+     * @param cells layout cell of each glyph, as left, top, right and bottom
+     * (exclusive), in pixels
+     * @return ink bounds of each glyph, in the same form; left and right are
+     * equal for a glyph without ink
+     */
+    static int[] extract(Raster raster, int[] cells) {
+        GlyphBoxExtractor extractor = new GlyphBoxExtractor(cells);
+        extractor.scan(raster);
+        extractor.assignComponents();
+        return extractor.boxes;
+    }
+
+    private void scan(Raster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int minX = raster.getMinX();
+        int minY = raster.getMinY();
+        int threshold = 1 << (raster.getSampleModel().getSampleSize(0) - 1);
+
+        // cells ordered by top, to become active when the scan reaches them
+        int cellCount = cells.length / 4;
+        long[] byTop = new long[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            byTop[i] = ((long) cells[i * 4 + 1] << 32) | i;
+        }
+        Arrays.sort(byTop);
+        int nextCell = 0;
+        int[] active = new int[cellCount]; // cells on the current row, ordered by left
+        int activeCount = 0;
+
+        int[] samples = new int[width];
+        int[] prevRuns = new int[width + 1]; // start, end (exclusive) and label of each run
+        int[] runs = new int[width + 1];
+        int prevRunCount = 0;
+
+        for (int y = 0; y < height; y++) {
+            // update the cells on this row
+            boolean added = false;
+            while (nextCell < cellCount && (int) (byTop[nextCell] >> 32) <= y) {
+                int cell = (int) byTop[nextCell++];
+                if (cells[cell * 4 + 3] > y && cells[cell * 4 + 2] > cells[cell * 4]) {
+                    active[activeCount++] = cell;
+                    added = true;
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < activeCount; i++) {
+                if (cells[active[i] * 4 + 3] > y) {
+                    active[kept++] = active[i];
+                }
+            }
+            activeCount = kept;
+            if (added) {
+                sortByLeft(active, activeCount);
+            }
+
+            raster.getSamples(minX, minY + y, width, 1, 0, samples);
+            int runCount = 0;
+            int p = 0; // previous run that may touch the next run
+            for (int x = 0; x < width; x++) {
+                if (samples[x] >= threshold) {
+                    continue;
+                }
+                int start = x;
+                while (x < width && samples[x] < threshold) {
+                    x++;
+                }
+                int end = x;
+
+                // join runs of the previous row that touch this one, diagonally included
+                int label = -1;
+                while (p < prevRunCount && prevRuns[p * 3 + 1] < start) {
+                    p++;
+                }
+                for (int q = p; q < prevRunCount && prevRuns[q * 3] <= end; q++) {
+                    int other = find(prevRuns[q * 3 + 2]);
+                    if (label == -1) {
+                        label = other;
+                    } else if (other != label) {
+                        label = union(label, other);
+                    }
+                }
+                if (label == -1) {
+                    label = newLabel();
+                }
+                extend(bounds, label * 4, start, y, end, y + 1);
+
+                if (runCount * 3 + 2 >= runs.length) {
+                    runs = Arrays.copyOf(runs, runs.length * 2);
+                }
+                runs[runCount * 3] = start;
+                runs[runCount * 3 + 1] = end;
+                runs[runCount * 3 + 2] = label;
+                runCount++;
+
+                // record the parts of the run in each cell
+                for (int i = 0; i < activeCount; i++) {
+                    int cell = active[i];
+                    int left = Math.max(start, cells[cell * 4]);
+                    if (cells[cell * 4] >= end) {
+                        break;
+                    }
+                    int right = Math.min(end, cells[cell * 4 + 2]);
+                    if (left < right) {
+                        addPart(label, cell, left, y, right);
+                    }
+                }
+            }
+
+            int[] swap = prevRuns;
+            prevRuns = runs;
+            runs = swap.length >= prevRuns.length ? swap : new int[prevRuns.length];
+            prevRunCount = runCount;
+        }
+    }
+
+    /**
+     * Gives each component to the glyph it belongs to.
+     */
+    private void assignComponents() {
+        // merge parts recorded under labels that were later joined
+        Map<Integer, Map<Integer, int[]>> components = new HashMap<Integer, Map<Integer, int[]>>();
+        for (Map.Entry<Long, int[]> entry : parts.entrySet()) {
+            int root = find((int) (entry.getKey() >> 32));
+            int cell = entry.getKey().intValue();
+            Map<Integer, int[]> cellParts = components.get(root);
+            if (cellParts == null) {
+                cellParts = new HashMap<Integer, int[]>();
+                components.put(root, cellParts);
+            }
+            int[] part = entry.getValue();
+            int[] merged = cellParts.get(cell);
+            if (merged == null) {
+                cellParts.put(cell, part);
+            } else {
+                extend(merged, 0, part[0], part[1], part[2], part[3]);
+                merged[4] += part[4];
+            }
+        }
+
+        for (Map.Entry<Integer, Map<Integer, int[]>> component : components.entrySet()) {
+            Map<Integer, int[]> cellParts = component.getValue();
+            int owner = -1;
+            int ownerCount = 0;
+            for (Map.Entry<Integer, int[]> part : cellParts.entrySet()) {
+                int count = part.getValue()[4];
+                if (count > ownerCount) {
+                    owner = part.getKey();
+                    ownerCount = count;
+                }
+            }
+
+            // an overhang reaches into the edge of a cell, while touching
+            // glyphs each fill much of their own
+            int shared = 0;
+            for (Map.Entry<Integer, int[]> part : cellParts.entrySet()) {
+                int[] b = part.getValue();
+                int cell = part.getKey() * 4;
+                if ((b[2] - b[0]) * 2 >= cells[cell + 2] - cells[cell]) {
+                    shared++;
+                }
+            }
+            if (shared > 1) {
+                for (Map.Entry<Integer, int[]> part : cellParts.entrySet()) {
+                    int[] b = part.getValue();
+                    addToBox(part.getKey(), b[0], b[1], b[2], b[3]);
+                }
+            } else {
+                int c = component.getKey() * 4;
+                addToBox(owner, bounds[c], bounds[c + 1], bounds[c + 2], bounds[c + 3]);
+            }
+        }
+    }
+
+    private void addToBox(int cell, int left, int top, int right, int bottom) {
+        int i = cell * 4;
+        if (boxes[i] == boxes[i + 2]) {
+            boxes[i] = left;
+            boxes[i + 1] = top;
+            boxes[i + 2] = right;
+            boxes[i + 3] = bottom;
+        } else {
+            extend(boxes, i, left, top, right, bottom);
+        }
+    }
+
+    private void addPart(int label, int cell, int left, int y, int right) {
+        Long key = ((long) label << 32) | cell;
+        int[] part = parts.get(key);
+        if (part == null) {
+            parts.put(key, new int[]{left, y, right, y + 1, right - left});
+        } else {
+            extend(part, 0, left, y, right, y + 1);
+            part[4] += right - left;
+        }
+    }
+
+    private int newLabel() {
+        if (labelCount == parent.length) {
+            parent = Arrays.copyOf(parent, labelCount * 2);
+            bounds = Arrays.copyOf(bounds, labelCount * 8);
+        }
+        int label = labelCount++;
+        parent[label] = label;
+        bounds[label * 4] = Integer.MAX_VALUE;
+        bounds[label * 4 + 1] = Integer.MAX_VALUE;
+        bounds[label * 4 + 2] = Integer.MIN_VALUE;
+        bounds[label * 4 + 3] = Integer.MIN_VALUE;
+        return label;
+    }
+
+    private int find(int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private int union(int a, int b) {
+        int root = Math.min(a, b);
+        int other = Math.max(a, b);
+        parent[other] = root;
+        extend(bounds, root * 4, bounds[other * 4], bounds[other * 4 + 1], bounds[other * 4 + 2], bounds[other * 4 + 3]);
+        return root;
+    }
+
+    private static void extend(int[] b, int i, int left, int top, int right, int bottom) {
+        b[i] = Math.min(b[i], left);
+        b[i + 1] = Math.min(b[i + 1], top);
+        b[i + 2] = Math.max(b[i + 2], right);
+        b[i + 3] = Math.max(b[i + 3], bottom);
+    }
+
+    private void sortByLeft(int[] active, int count) {
+        for (int i = 1; i < count; i++) {
+            int cell = active[i];
+            int j = i - 1;
+            while (j >= 0 && cells[active[j] * 4] > cells[cell * 4]) {
+                active[j + 1] = active[j];
+                j--;
+            }
+            active[j + 1] = cell;
+        }
+    }
+}
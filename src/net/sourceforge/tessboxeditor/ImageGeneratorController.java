@@ -509,7 +509,11 @@ public class ImageGeneratorController implements Initializable {
                 generator.setLeading(this.spnLeading.getValue());
                 generator.setMargin(margin);
                 generator.setNoiseAmount((int) this.spnNoise.getValue());
+                if (prefs.get("noiseSeed", null) != null) {
+                    generator.setNoiseSeed(prefs.getLong("noiseSeed", 0)); // for reproducible datasets
+                }
                 generator.setAntiAliasing(this.chbAntiAliasing.isSelected());
+                generator.setConcurrency(prefs.getInt("generatorConcurrency", Runtime.getRuntime().availableProcessors()));
                 generator.create();
             }
 
@@ -543,23 +547,34 @@ public class ImageGeneratorController implements Initializable {
         }
     }
 
+    /**
+     * Breaks the laid out text into pages of the given height, in one pass
+     * over the glyph boxes. Page <i>n</i> ends before the first box that
+     * reaches below <i>n</i> times the printable height; since these limits
+     * only grow, each page starts where the previous one ended.
+     *
+     * @param height page height
+     */
     void breakPages(int height) {
+        if (height - margin * 2 <= 0) {
+            throw new IllegalArgumentException("The image height must be greater than twice the margin.");
+        }
         List<Rectangle> boxes = this.textFlow.getChildren().stream()
                 .filter(b -> b instanceof Rectangle)
                 .map(b -> (Rectangle) b)
                 .collect(Collectors.toList());
-        
-        int printableHeight = pageNum == 1 ? height - margin * 2 : height - margin * 2 * pageNum;
-        Optional<Rectangle> op = boxes.stream().filter(b -> (b.getY() + b.getHeight()) > printableHeight).findFirst();
-        if (op.isPresent()) {
-            int endIndex = boxes.indexOf(op.get());
-            textPages.add(allText.subList(startIndex, endIndex));
-            pageNum++;
-            startIndex = endIndex;
-            breakPages((int) this.spnH.getValue() * pageNum);
-        } else {
-            textPages.add(allText.subList(startIndex, allText.size()));
+
+        int printableHeight = (height - margin * 2) * pageNum;
+        for (int i = 0; i < boxes.size(); i++) {
+            Rectangle b = boxes.get(i);
+            while ((b.getY() + b.getHeight()) > printableHeight) {
+                textPages.add(allText.subList(startIndex, i));
+                pageNum++;
+                startIndex = i;
+                printableHeight = (height - margin * 2) * pageNum;
+            }
         }
+        textPages.add(allText.subList(startIndex, allText.size()));
     }
 
     public void savePrefs() {
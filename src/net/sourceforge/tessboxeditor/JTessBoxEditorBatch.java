@@ -0,0 +1,372 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.Tesseract;
+
+/**
+ * Command-line batch mode. Runs training, bulk EOL marking and TIFF/box
+ * generation with text2image without starting the JavaFX toolkit, so that it
+ * can run on machines with no display.
+ * <p>
+ * Jobs can be given as arguments, or one per line in a job file, in which case
+ * several jobs may run at once.
+ */
+public class JTessBoxEditorBatch {
+
+    private static final String USAGE
+            = "Usage: java -cp jTessBoxEditorFX.jar net.sourceforge.tessboxeditor.JTessBoxEditorBatch <command> [options]\n"
+            + "\n"
+            + "Commands:\n"
+            + "  train --tess-dir DIR --data-dir DIR --lang LANG [--bootstrap LANG] [--rtl]\n"
+            + "        [--mode MODE] [--concurrency N] [--no-incremental]\n"
+            + "      MODE: make_box_file_only, train_with_existing_box (default),\n"
+            + "            shape_clustering, dictionary, train_from_scratch\n"
+            + "  markeol [--tessdata DIR] [--threads N] IMAGE...\n"
+            + "      Inserts EOL tabs in the box file of each image.\n"
+            + "  text2image --tess-dir DIR --text FILE --outputbase BASE --font NAME\n"
+            + "        [--family NAME] [--ptsize N] [--fonts-dir DIR] [--exposure N]\n"
+            + "        [--char-spacing F] [--leading N] [--width N] [--height N]\n"
+            + "  jobs FILE [--parallel N]\n"
+            + "      Runs the commands in FILE, one per line; # starts a comment.\n"
+            + "\n"
+            + "Options:\n"
+            + "  -v, --verbose    log progress of each step";
+
+    private static final Set<String> FLAGS = new HashSet<String>();
+
+    static {
+        FLAGS.add("--rtl");
+        FLAGS.add("--no-incremental");
+        FLAGS.add("--verbose");
+        FLAGS.add("-v");
+    }
+
+    private final String label; // prefix of output lines, or null
+    private final PrintStream out;
+
+    private final static Logger logger = Logger.getLogger(JTessBoxEditorBatch.class.getName());
+
+    JTessBoxEditorBatch(String label, PrintStream out) {
+        this.label = label;
+        this.out = out;
+    }
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length == 0 || args[0].equals("-h") || args[0].equals("--help")) {
+            System.out.println(USAGE);
+            System.exit(args.length == 0 ? 2 : 0);
+        }
+
+        int status;
+        try {
+            Options options = new Options(args);
+            if (!options.hasFlag("--verbose") && !options.hasFlag("-v")) {
+                Logger.getLogger("").setLevel(Level.WARNING);
+            }
+            status = new JTessBoxEditorBatch(null, System.out).run(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            status = 2;
+        } catch (Exception e) {
+            logger.log(Level.FINE, e.getMessage(), e);
+            System.err.println("Error: " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+            status = 1;
+        }
+        System.exit(status);
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param options parsed command line
+     * @return exit status
+     * @throws Exception
+     */
+    int run(Options options) throws Exception {
+        switch (options.command) {
+            case "train":
+                train(options);
+                return 0;
+            case "markeol":
+                markEOL(options);
+                return 0;
+            case "text2image":
+                text2image(options);
+                return 0;
+            case "jobs":
+                if (label != null) {
+                    throw new IllegalArgumentException("Job files cannot be nested.");
+                }
+                return runJobs(options);
+            default:
+                throw new IllegalArgumentException("Unknown command: " + options.command);
+        }
+    }
+
+    void train(Options options) throws Exception {
+        TrainingMode mode = parseMode(options.get("--mode", "train_with_existing_box"));
+        TessTrainer trainer = new TessTrainer(options.require("--tess-dir"), options.require("--data-dir"), options.require("--lang"), options.get("--bootstrap", ""), options.hasFlag("--rtl"));
+        trainer.setConcurrency(options.getInt("--concurrency", Runtime.getRuntime().availableProcessors()));
+        trainer.setIncremental(!options.hasFlag("--no-incremental"));
+        trainer.textProperty().addListener((observable, oldValue, newValue) -> print(newValue));
+        trainer.generate(mode);
+    }
+
+    void markEOL(Options options) throws Exception {
+        if (options.positional.isEmpty()) {
+            throw new IllegalArgumentException("No image files given.");
+        }
+        String tessdataPath = options.get("--tessdata", MainController.WINDOWS ? "tesseract-ocr/tessdata" : "/usr/share/tesseract-ocr/4.00/tessdata");
+        int nThreads = Math.min(options.positional.size(), options.getInt("--threads", Runtime.getRuntime().availableProcessors()));
+
+        // Tesseract instances are not thread-safe; each pool thread gets its own
+        final ThreadLocal<ITesseract> instances = ThreadLocal.withInitial(() -> {
+            ITesseract instance = new Tesseract();
+            instance.setDatapath(tessdataPath);
+            return instance;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nThreads));
+        CompletionService<String> completionService = new ExecutorCompletionService<String>(executor);
+        try {
+            for (String path : options.positional) {
+                File imageFile = new File(path);
+                completionService.submit(() -> {
+                    boolean marked = BoxEditorEditController.markEOL(imageFile, instances.get(), () -> false);
+                    return (marked ? "Marked EOL: " : "No box file: ") + imageFile.getPath();
+                });
+            }
+            for (int i = 0; i < options.positional.size(); i++) {
+                print(completionService.take().get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    void text2image(Options options) throws Exception {
+        File outputbase = new File(options.require("--outputbase")).getAbsoluteFile();
+        File outputDir = outputbase.getParentFile();
+        outputDir.mkdirs();
+        String font = options.require("--font");
+
+        TessTrainer trainer = new TessTrainer(options.require("--tess-dir"), outputDir.getPath(), "", null, false);
+        trainer.textProperty().addListener((observable, oldValue, newValue) -> print(newValue));
+        trainer.text2image(new File(options.require("--text")).getAbsolutePath(), outputbase.getPath(), font, options.get("--family", font),
+                options.getInt("--ptsize", 12), options.get("--fonts-dir", MainController.WINDOWS ? "C:/Windows/Fonts" : "/usr/share/fonts"),
+                options.getInt("--exposure", 0), Float.parseFloat(options.get("--char-spacing", "0")), options.getInt("--leading", 12),
+                options.getInt("--width", 3600), options.getInt("--height", 4800));
+    }
+
+    /**
+     * Runs the jobs of a job file.
+     *
+     * @return 0 if all jobs succeeded, 1 otherwise
+     */
+    int runJobs(Options options) throws Exception {
+        if (options.positional.size() != 1) {
+            throw new IllegalArgumentException("Expected one job file.");
+        }
+        File jobFile = new File(options.positional.get(0));
+        List<String> lines = Files.readAllLines(jobFile.toPath(), StandardCharsets.UTF_8);
+        List<Options> jobs = new ArrayList<Options>();
+        List<String> labels = new ArrayList<String>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                jobs.add(new Options(tokenize(line)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("%s:%d: %s", jobFile.getName(), i + 1, e.getMessage()));
+            }
+            labels.add(String.format("[%s:%d] ", jobFile.getName(), i + 1));
+        }
+
+        int parallel = options.getInt("--parallel", 1);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallel, jobs.size())));
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
+        int failed = 0;
+        try {
+            for (int i = 0; i < jobs.size(); i++) {
+                Options job = jobs.get(i);
+                JTessBoxEditorBatch batch = new JTessBoxEditorBatch(labels.get(i), out);
+                completionService.submit(() -> {
+                    try {
+                        return batch.run(job) == 0;
+                    } catch (Exception e) {
+                        logger.log(Level.FINE, e.getMessage(), e);
+                        batch.print("Error: " + (e.getMessage() != null ? e.getMessage() : e.toString()));
+                        return false;
+                    }
+                });
+            }
+            for (int i = 0; i < jobs.size(); i++) {
+                if (!completionService.take().get()) {
+                    failed++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        print(String.format("%d of %d jobs succeeded.", jobs.size() - failed, jobs.size()));
+        return failed == 0 ? 0 : 1;
+    }
+
+    void print(String message) {
+        if (message == null) {
+            return;
+        }
+        synchronized (out) {
+            for (String line : message.split("\\R", -1)) {
+                out.println(label == null ? line : label + line);
+            }
+        }
+    }
+
+    static TrainingMode parseMode(String value) {
+        for (TrainingMode mode : TrainingMode.values()) {
+            if (mode != TrainingMode.HeaderText && mode.name().equalsIgnoreCase(value.replace('-', '_'))) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown training mode: " + value);
+    }
+
+    /**
+     * Splits a job line into arguments at whitespace. Double quotes group
+     * words into one argument.
+     */
+    static String[] tokenize(String line) {
+        List<String> tokens = new ArrayList<String>();
+        StringBuilder token = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                if (token == null) {
+                    token = new StringBuilder();
+                }
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (token != null) {
+                    tokens.add(token.toString());
+                    token = null;
+                }
+            } else {
+                if (token == null) {
+                    token = new StringBuilder();
+                }
+                token.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unbalanced quotes.");
+        }
+        if (token != null) {
+            tokens.add(token.toString());
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * A command with its options and positional arguments.
+     */
+    static class Options {
+
+        final String command;
+        final Map<String, String> values = new HashMap<String, String>();
+        final Set<String> flags = new HashSet<String>();
+        final List<String> positional = new ArrayList<String>();
+
+        Options(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("No command given.");
+            }
+            command = args[0];
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (FLAGS.contains(arg)) {
+                    flags.add(arg);
+                } else if (arg.startsWith("--")) {
+                    if (i + 1 == args.length) {
+                        throw new IllegalArgumentException("Missing value for " + arg);
+                    }
+                    values.put(arg, args[++i]);
+                } else {
+                    positional.add(arg);
+                }
+            }
+        }
+
+        boolean hasFlag(String name) {
+            return flags.contains(name);
+        }
+
+        String get(String name, String defaultValue) {
+            String value = values.get(name);
+            return value != null ? value : defaultValue;
+        }
+
+        String require(String name) {
+            String value = values.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing option " + name + " for " + command);
+            }
+            return value;
+        }
+
+        int getInt(String name, int defaultValue) {
+            String value = values.get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+            }
+        }
+    }
+}
@@ -130,6 +130,9 @@ public class MainController implements Initializable {
         if (!MainController.getInstance().getBoxEditorController().promptToSave()) {
             return false;
         }
+        if (!MainController.getInstance().getBoxEditorController().awaitSaves()) {
+            return false; // keep the changes open; the failure has been reported
+        }
 
         this.tabBoxEditorController.savePrefs();
         this.tabGeneratorController.savePrefs();
@@ -22,6 +22,8 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.ResourceBundle;
@@ -77,6 +79,10 @@ public class MainMenuController implements Initializable {
     @FXML
     private MenuItem miExit;
     @FXML
+    private MenuItem miUndo;
+    @FXML
+    private MenuItem miRedo;
+    @FXML
     private MenuItem miMerge;
     @FXML
     private MenuItem miSplit;
@@ -93,6 +99,8 @@ public class MainMenuController implements Initializable {
     @FXML
     private MenuItem miFont;
     @FXML
+    private MenuItem miAutoSave;
+    @FXML
     private MenuItem miHelp;
     @FXML
     private MenuItem miAbout;
@@ -131,6 +139,7 @@ public class MainMenuController implements Initializable {
         this.menuEdit.setVisible(boxEditorActive);
         this.menuSettings.setVisible(boxEditorActive || tabIndex == 0);
         this.miFont.setVisible(boxEditorActive || tabIndex == 0);
+        this.miAutoSave.setVisible(boxEditorActive);
         this.miOpen.setVisible(boxEditorActive);
         this.miSave.setVisible(boxEditorActive);
         this.miSaveAs.setVisible(boxEditorActive);
@@ -150,6 +159,10 @@ public class MainMenuController implements Initializable {
         } else if (event.getSource() == miExit) {
             Stage stage = (Stage) menuBar.getScene().getWindow();
             stage.fireEvent(new WindowEvent(stage, WindowEvent.WINDOW_CLOSE_REQUEST));
+        } else if (event.getSource() == miUndo) {
+            MainController.getInstance().getBoxEditorController().undo();
+        } else if (event.getSource() == miRedo) {
+            MainController.getInstance().getBoxEditorController().redo();
         } else if (event.getSource() == miMerge) {
             ((Button) menuBar.getScene().lookup("#btnMerge")).fire();
         } else if (event.getSource() == miSplit) {
@@ -169,6 +182,8 @@ public class MainMenuController implements Initializable {
                 font = op.get();
                 MainController.getInstance().setFont(font);
             }
+        } else if (event.getSource() == miAutoSave) {
+            selectAutoSaveInterval();
         } else if (event.getSource() == miHelp) {
             if (helpDialog == null) {
                 Label urlLabel = new Label();
@@ -243,6 +258,38 @@ public class MainMenuController implements Initializable {
         }
     }
 
+    /**
+     * Lets the user choose how often the box editor writes unsaved changes to
+     * a journal, from which they are offered for recovery when the box file is
+     * next opened after a crash.
+     */
+    void selectAutoSaveInterval() {
+        BoxEditorController boxEditor = MainController.getInstance().getBoxEditorController();
+        int current = boxEditor.getAutoSaveInterval();
+        Map<String, Integer> intervals = new LinkedHashMap<String, Integer>();
+        intervals.put("Off", 0);
+        for (int seconds : new int[]{30, 60, 120, 300, 600}) {
+            intervals.put(formatInterval(seconds), seconds);
+        }
+        intervals.put(formatInterval(current), current); // set in preferences
+
+        ChoiceDialog<String> dialog = new ChoiceDialog<String>(current > 0 ? formatInterval(current) : "Off", intervals.keySet());
+        dialog.setTitle(JTessBoxEditor.APP_NAME);
+        dialog.setHeaderText("Save unsaved changes to a recovery journal");
+        dialog.setContentText("Every:");
+        Optional<String> op = dialog.showAndWait();
+        if (op.isPresent()) {
+            boxEditor.setAutoSaveInterval(intervals.get(op.get()));
+        }
+    }
+
+    private static String formatInterval(int seconds) {
+        if (seconds == 0) {
+            return "Off";
+        }
+        return seconds % 60 == 0 ? (seconds / 60) + (seconds == 60 ? " minute" : " minutes") : seconds + " seconds";
+    }
+
     /**
      * Follows the reference in an link. The given url is the requested
      * reference. By default this calls <a href="#setPage">setPage</a>, and if
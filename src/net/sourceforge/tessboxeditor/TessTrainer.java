@@ -22,12 +22,19 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.scene.text.Font;
 
+import net.sourceforge.tessboxeditor.TrainingScheduler.Stage;
 import net.sourceforge.vietocr.util.*;
 import net.sourceforge.vietpad.utilities.TextUtilities;
 
@@ -47,22 +54,23 @@ public class TessTrainer {
     private static final String cmdnumber2dawg = "wordlist2dawg %2$s %1$s.numbers %1$s.number-dawg %1$s.unicharset";
     private static final String cmdbigrams2dawg = "wordlist2dawg %2$s %1$s.word.bigrams %1$s.bigram-dawg %1$s.unicharset";
     private static final String cmdcombine_tessdata = "combine_tessdata %s.";
+    // lang.* components picked up by combine_tessdata
+    private static final String[] tessdataComponents = {"config", "unicharset", "unicharambigs", "inttemp", "pffmtable", "normproto",
+        "punc-dawg", "word-dawg", "number-dawg", "freq-dawg", "fixed-length-dawgs", "cube-unicharset", "cube-word-dawg",
+        "shapetable", "bigram-dawg", "unambig-dawg", "params-model"};
 
-    ProcessBuilder pb;
     String tessDir;
     String inputDataDir;
     String lang;
     String bootstrapLang;
     boolean rtl;
+    int concurrency = Runtime.getRuntime().availableProcessors();
+    boolean incremental = true;
+    TrainingManifest manifest;
 
     private final static Logger logger = Logger.getLogger(TessTrainer.class.getName());
 
     public TessTrainer(String tessDir, String inputDataDir, String lang, String bootstrapLang, boolean rtl) {
-        pb = new ProcessBuilder();
-//        pb.directory(new File(System.getProperty("user.home")));
-        pb.directory(new File(inputDataDir));
-        pb.redirectErrorStream(true);
-
         this.tessDir = tessDir;
         this.inputDataDir = inputDataDir;
         this.lang = lang;
@@ -70,6 +78,27 @@ public class TessTrainer {
         this.rtl = rtl;
     }
 
+    /**
+     * Sets the maximum number of per-image commands, such as makebox and
+     * box.train, to run at once.
+     *
+     * @param concurrency number of concurrent processes; 1 runs them in
+     * sequence
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Sets whether to skip stages whose inputs have not changed since the
+     * last run, as recorded in the manifest of the training data directory.
+     *
+     * @param incremental
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     /**
      * Generates data based on selection of training mode.
      *
@@ -78,6 +107,18 @@ public class TessTrainer {
      * @throws Exception
      */
     public void generate(TrainingMode mode) throws Exception {
+        manifest = incremental ? new TrainingManifest(new File(inputDataDir)) : null;
+        try {
+            generateData(mode);
+        } finally {
+            if (manifest != null) {
+                manifest.save();
+                manifest = null;
+            }
+        }
+    }
+
+    private void generateData(TrainingMode mode) throws Exception {
         switch (mode) {
             case Make_Box_File_Only:
                 makeBox();
@@ -114,14 +155,34 @@ public class TessTrainer {
      * @throws Exception 
      */
     void text2image(String inputTextFile, String outputbase, Font font, String fontFolder, int exposure, float char_spacing, int leading, int width, int height) throws Exception {
+        text2image(inputTextFile, outputbase, font.getName(), font.getFamily(), (int) font.getSize(), fontFolder, exposure, char_spacing, leading, width, height);
+    }
+
+    /**
+     * Run text2image command to generate Tiff/Box pair. Takes the font by
+     * name, so that it can run without the JavaFX toolkit.
+     *
+     * @param inputTextFile
+     * @param outputbase
+     * @param fontName
+     * @param fontFamilyname
+     * @param ptsize
+     * @param fontFolder
+     * @param exposure
+     * @param char_spacing or letter tracking
+     * @param leading
+     * @param width
+     * @param height
+     * @throws Exception
+     */
+    void text2image(String inputTextFile, String outputbase, String fontName, String fontFamilyname, int ptsize, String fontFolder, int exposure, float char_spacing, int leading, int width, int height) throws Exception {
         logger.info("text2image");
         writeMessage("** text2image **");
-        List<String> cmd = getCommand(String.format(cmdtext2image, inputTextFile, outputbase, font.getName().replace(" ", "_").replace("Oblique", "Italic"), (int) font.getSize(), fontFolder, exposure, char_spacing, leading, width, height));
+        List<String> cmd = getCommand(String.format(cmdtext2image, inputTextFile, outputbase, fontName.replace(" ", "_").replace("Oblique", "Italic"), ptsize, fontFolder, exposure, char_spacing, leading, width, height));
         cmd.set(3, cmd.get(3).replace("_", " ")); // handle spaces in font name
         try {
             runCommand(cmd);
         } catch (Exception e) {
-            String fontFamilyname = font.getFamily();
             // work around comma issue in Pango-originating fontnames
             cmd.set(3, cmd.get(3).replace(fontFamilyname, fontFamilyname + ","));
             runCommand(cmd);
@@ -153,11 +214,7 @@ public class TessTrainer {
 
         logger.info("Make Box Files");
         writeMessage("** Make Box Files **");
-        for (String file : files) {
-            cmd.set(1, file);
-            cmd.set(2, TextUtilities.stripExtension(file));
-            runCommand(cmd);
-        }
+        runImageCommands("makebox", getImageCommands(cmd, files), ".box");
     }
 
     /**
@@ -167,10 +224,20 @@ public class TessTrainer {
      * @throws Exception
      */
     void generateTraineddata(boolean skipBoxGeneration) throws Exception {
-        if (!skipBoxGeneration) {
-            makeBox();
-        }
+        TrainingScheduler scheduler = new TrainingScheduler();
+        Stage makebox = skipBoxGeneration ? null : scheduler.add("makebox", this::makeBox);
+        Stage train = scheduler.add("box.train", this::trainTesseract, makebox);
+        Stage unicharset = scheduler.add("unicharset_extractor", this::extractUnicharset, train);
+        addClusteringStages(scheduler, unicharset);
+        runStages(scheduler);
+    }
 
+    /**
+     * Runs Tesseract in training mode on image/box pairs.
+     *
+     * @throws Exception
+     */
+    void trainTesseract() throws Exception {
         String[] files = getImageFilesWithBox();
 
         if (files.length == 0) {
@@ -181,31 +248,45 @@ public class TessTrainer {
         writeMessage("** Run Tesseract for Training **");
         //cmdtess_train
         List<String> cmd = getCommand(cmdtess_train);
-        for (String file : files) {
-            cmd.set(1, file);
-            cmd.set(2, TextUtilities.stripExtension(file));
-            runCommand(cmd);
-        }
+        runImageCommands("box.train", getImageCommands(cmd, files), ".tr", ".box");
+    }
 
+    /**
+     * Computes the character set from box files.
+     *
+     * @throws Exception
+     */
+    void extractUnicharset() throws Exception {
         logger.info("Compute Character Set");
         writeMessage("** Compute Character Set **");
         //cmdunicharset_extractor
-        cmd = getCommand(cmdunicharset_extractor);
-        files = new File(inputDataDir).list(new FilenameFilter() {
+        List<String> cmd = getCommand(cmdunicharset_extractor);
+        String[] files = new File(inputDataDir).list(new FilenameFilter() {
             @Override
             public boolean accept(File dir, String filename) {
                 return filename.endsWith(".box");
             }
         });
+        Arrays.sort(files);
         cmd.addAll(Arrays.asList(files));
-        runCommand(cmd);
 
         //set_unicharset_properties
+        List<String> cmd2 = null;
         if (new File(this.tessDir, "set_unicharset_properties.exe").exists() || new File(this.tessDir, "set_unicharset_properties").exists()) {
-            logger.info("Set Character Set Properties");
-            writeMessage("** Set Character Set Properties **");
-            cmd = getCommand(String.format(cmdset_unicharset_properties, inputDataDir));
+            cmd2 = getCommand(String.format(cmdset_unicharset_properties, inputDataDir));
+        }
+
+        List<String> inputs = Arrays.asList(files);
+        List<String> outputs = Arrays.asList("unicharset");
+        String signature = cmd + " " + cmd2;
+        if (!isUpToDate("unicharset", signature, inputs, outputs)) {
             runCommand(cmd);
+            if (cmd2 != null) {
+                logger.info("Set Character Set Properties");
+                writeMessage("** Set Character Set Properties **");
+                runCommand(cmd2);
+            }
+            record("unicharset", signature, inputs, outputs);
         }
 
 //        if (rtl) {
@@ -214,7 +295,6 @@ public class TessTrainer {
 //            writeMessage("Fixed unicharset's Unicode character directionality.\n");
 //            fixUniCharDirectionality();
 //        }
-        runShapeClustering();
     }
 
     /**
@@ -223,45 +303,110 @@ public class TessTrainer {
      * @throws Exception
      */
     void runShapeClustering() throws Exception {
-        String[] files = new File(inputDataDir).list(new FilenameFilter() {
-            @Override
-            public boolean accept(File dir, String filename) {
-                return filename.endsWith(".tr");
-            }
-        });
+        TrainingScheduler scheduler = new TrainingScheduler();
+        addClusteringStages(scheduler, null);
+        runStages(scheduler);
+    }
 
-        if (files.length == 0) {
-            throw new RuntimeException("There are no .tr files. Need to train Tesseract first.");
-        }
+    /**
+     * Adds the stages from shape clustering on. cntraining only reads the .tr
+     * files, so it runs alongside shapeclustering and mftraining; the
+     * dictionary stages only need the unicharset from mftraining.
+     *
+     * @param scheduler
+     * @param dependency stage producing the .tr files and unicharset, or
+     * <code>null</code>
+     */
+    void addClusteringStages(TrainingScheduler scheduler, Stage dependency) {
+        Clustering clustering = new Clustering();
+        Stage prepare = scheduler.add("clustering", clustering::prepare, dependency);
+        Stage shape = scheduler.add("shapeclustering", clustering::shapeClustering, prepare);
+        Stage mf = scheduler.add("mftraining", clustering::mfTraining, shape);
+        Stage cn = scheduler.add("cntraining", clustering::cnTraining, prepare);
+        Stage rename = scheduler.add("rename", clustering::rename, mf, cn);
+        addDictionaryStages(scheduler, mf, rename);
+    }
 
-        logger.info("Shape Clustering");
-        writeMessage("** Shape Clustering **");
-        //cmdshapeclustering
-        List<String> cmd = getCommand(String.format(cmdshapeclustering, lang));
-        cmd.addAll(Arrays.asList(files));
-        runCommand(cmd);
+    /**
+     * Commands of the shape clustering stages, which are cached as one:
+     * shapeclustering leaves a shapetable that mftraining reads, and the
+     * outputs are only renamed once all three have run.
+     */
+    private class Clustering {
+
+        List<String> cmdShape;
+        List<String> cmdMf;
+        List<String> cmdCn;
+        List<String> inputs;
+        List<String> outputs;
+        String signature;
+        boolean upToDate;
+
+        void prepare() throws Exception {
+            String[] files = new File(inputDataDir).list(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String filename) {
+                    return filename.endsWith(".tr");
+                }
+            });
+
+            if (files.length == 0) {
+                throw new RuntimeException("There are no .tr files. Need to train Tesseract first.");
+            }
+            Arrays.sort(files);
+
+            //cmdshapeclustering
+            cmdShape = getCommand(String.format(cmdshapeclustering, lang));
+            cmdShape.addAll(Arrays.asList(files));
+            //cmdmftraining
+            cmdMf = getCommand(String.format(cmdmftraining, lang));
+            cmdMf.addAll(Arrays.asList(files));
+            //cmdcntraining
+            cmdCn = getCommand(cmdcntraining);
+            cmdCn.addAll(Arrays.asList(files));
+
+            inputs = new ArrayList<String>(Arrays.asList(files));
+            inputs.add(lang + ".font_properties");
+            inputs.add("unicharset");
+            outputs = new ArrayList<String>();
+            for (String name : new String[]{"inttemp", "pffmtable", "normproto", "shapetable", "unicharset"}) {
+                outputs.add(lang + "." + name);
+            }
+            signature = cmdShape + " " + cmdMf + " " + cmdCn;
+            upToDate = isUpToDate("clustering", signature, inputs, outputs);
+        }
 
-        logger.info("MF Training");
-        writeMessage("** MF Training **");
-        //cmdmftraining
-        cmd = getCommand(String.format(cmdmftraining, lang));
-        cmd.addAll(Arrays.asList(files));
-        runCommand(cmd);
+        void shapeClustering() throws Exception {
+            if (!upToDate) {
+                logger.info("Shape Clustering");
+                runCommand("** Shape Clustering **", cmdShape);
+            }
+        }
 
-        logger.info("CN Training");
-        writeMessage("** CN Training **");
-        //cmdcntraining
-        cmd = getCommand(cmdcntraining);
-        cmd.addAll(Arrays.asList(files));
-        runCommand(cmd);
+        void mfTraining() throws Exception {
+            if (!upToDate) {
+                logger.info("MF Training");
+                runCommand("** MF Training **", cmdMf);
+            }
+        }
 
-        logger.info("Rename files");
-        renameFile("inttemp");
-        renameFile("pffmtable");
-        renameFile("normproto");
-        renameFile("shapetable");
+        void cnTraining() throws Exception {
+            if (!upToDate) {
+                logger.info("CN Training");
+                runCommand("** CN Training **", cmdCn);
+            }
+        }
 
-        runDictionary();
+        void rename() throws Exception {
+            if (!upToDate) {
+                logger.info("Rename files");
+                renameFile("inttemp");
+                renameFile("pffmtable");
+                renameFile("normproto");
+                renameFile("shapetable");
+                record("clustering", signature, inputs, outputs);
+            }
+        }
     }
 
     /**
@@ -270,6 +415,31 @@ public class TessTrainer {
      * @throws Exception
      */
     void runDictionary() throws Exception {
+        TrainingScheduler scheduler = new TrainingScheduler();
+        addDictionaryStages(scheduler, null, null);
+        runStages(scheduler);
+    }
+
+    /**
+     * Adds the dictionary stages. The word lists are independent of each
+     * other, so their dawgs are built concurrently.
+     *
+     * @param scheduler
+     * @param unicharset stage producing lang.unicharset, or <code>null</code>
+     * @param components stage producing the other traineddata components, or
+     * <code>null</code>
+     */
+    void addDictionaryStages(TrainingScheduler scheduler, Stage unicharset, Stage components) {
+        Stage check = scheduler.add("dictionary", this::checkUnicharset, unicharset);
+        Stage freq = scheduler.add("freq-dawg", () -> runDawgCommand(String.format(cmdwordlist2dawg, lang, (rtl ? "-r 1" : "")), false), check);
+        Stage word = scheduler.add("word-dawg", () -> runDawgCommand(String.format(cmdwordlist2dawg2, lang, (rtl ? "-r 1" : "")), false), check);
+        Stage punc = scheduler.add("punc-dawg", () -> runDawgCommand(String.format(cmdpunc2dawg, lang, (rtl ? "-r 2" : "")), true), check);
+        Stage number = scheduler.add("number-dawg", () -> runDawgCommand(String.format(cmdnumber2dawg, lang, ""), true), check);
+        Stage bigram = scheduler.add("bigram-dawg", () -> runDawgCommand(String.format(cmdbigrams2dawg, lang, (rtl ? "-r 1" : "")), true), check);
+        scheduler.add("combine_tessdata", this::combineTessdata, freq, word, punc, number, bigram, components);
+    }
+
+    void checkUnicharset() {
         if (!new File(inputDataDir, lang + ".unicharset").exists()) {
             String msg = String.format("There is no %1$s.unicharset. Need to train Tesseract first.", lang);
             throw new RuntimeException(msg);
@@ -277,51 +447,68 @@ public class TessTrainer {
 
         logger.info("Dictionary Data");
         writeMessage("** Dictionary Data **");
-        //cmdwordlist2dawg
-        List<String> cmd = getCommand(String.format(cmdwordlist2dawg, lang, (rtl ? "-r 1" : "")));
-        runCommand(cmd);
-
-        //cmdwordlist2dawg2
-        cmd = getCommand(String.format(cmdwordlist2dawg2, lang, (rtl ? "-r 1" : "")));
-        runCommand(cmd);
-
-        //cmdpunc2dawg
-        if (new File(inputDataDir, lang + ".punc").exists()) {
-            cmd = getCommand(String.format(cmdpunc2dawg, lang, (rtl ? "-r 2" : "")));
-            runCommand(cmd);
-        }
+    }
 
-        //cmdnumber2dawg
-        if (new File(inputDataDir, lang + ".numbers").exists()) {
-            cmd = getCommand(String.format(cmdnumber2dawg, lang, ""));
-            runCommand(cmd);
+    /**
+     * Combines data files into traineddata and moves it to tessdata folder.
+     *
+     * @throws Exception
+     */
+    void combineTessdata() throws Exception {
+        String traineddata = lang + ".traineddata";
+        //cmdcombine_tessdata
+        List<String> cmd = getCommand(String.format(cmdcombine_tessdata, lang));
+        List<String> inputs = new ArrayList<String>();
+        for (String component : tessdataComponents) {
+            if (new File(inputDataDir, lang + "." + component).exists()) {
+                inputs.add(lang + "." + component);
+            }
         }
+        List<String> outputs = Arrays.asList("tessdata/" + traineddata);
 
-        //cmdbigrams2dawg
-        if (new File(inputDataDir, lang + ".word.bigrams").exists()) {
-            cmd = getCommand(String.format(cmdbigrams2dawg, lang, (rtl ? "-r 1" : "")));
+        if (!isUpToDate("combine_tessdata", cmd.toString(), inputs, outputs)) {
+            logger.info("Combine Data Files");
+            writeMessage("** Combine Data Files **");
             runCommand(cmd);
-        }
-
-        logger.info("Combine Data Files");
-        writeMessage("** Combine Data Files **");
-        //cmdcombine_tessdata
-        cmd = getCommand(String.format(cmdcombine_tessdata, lang));
-        runCommand(cmd);
 
-        String traineddata = lang + ".traineddata";
-        logger.info("Moving generated traineddata file to tessdata folder");
-        writeMessage("** Moving generated traineddata file to tessdata folder **");
-        File tessdata = new File(inputDataDir, "tessdata");
-        if (!tessdata.exists()) {
-            tessdata.mkdir();
+            logger.info("Moving generated traineddata file to tessdata folder");
+            writeMessage("** Moving generated traineddata file to tessdata folder **");
+            File tessdata = new File(inputDataDir, "tessdata");
+            if (!tessdata.exists()) {
+                tessdata.mkdir();
+            }
+            File target = new File(tessdata, traineddata);
+            target.delete();
+            boolean success = new File(inputDataDir, traineddata).renameTo(target);
+            record("combine_tessdata", cmd.toString(), inputs, outputs);
         }
-        boolean success = new File(inputDataDir, traineddata).renameTo(new File(tessdata, traineddata));
 
         logger.info("Training Completed");
         writeMessage("** Training Completed **");
     }
 
+    /**
+     * Runs the stages and reports their timings to the output and to
+     * <code>training.log</code> in the training data directory.
+     *
+     * @param scheduler
+     * @throws Exception
+     */
+    void runStages(TrainingScheduler scheduler) throws Exception {
+        scheduler.run(concurrency);
+
+        String report = scheduler.getReport();
+        logger.info(report);
+        writeMessage(report);
+        File logFile = new File(inputDataDir, "training.log");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8))) {
+            out.write(report);
+            out.write("\n");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
     /**
      * Fixes Unicode Character Directionality in <code>unicharset</code> file.
      *
@@ -439,6 +626,116 @@ public class TessTrainer {
         return cmd;
     }
 
+    /**
+     * Gets a per-image command for each image file.
+     *
+     * @param cmd command with image and output base as arguments 1 and 2
+     * @param files image files
+     * @return commands
+     */
+    List<List<String>> getImageCommands(List<String> cmd, String[] files) {
+        List<List<String>> cmds = new ArrayList<List<String>>(files.length);
+        for (String file : files) {
+            List<String> fileCmd = new ArrayList<String>(cmd);
+            fileCmd.set(1, file);
+            fileCmd.set(2, TextUtilities.stripExtension(file));
+            cmds.add(fileCmd);
+        }
+        return cmds;
+    }
+
+    /**
+     * Runs a wordlist2dawg command unless its word list and unicharset have
+     * not changed.
+     *
+     * @param cmdStr
+     * @param optional whether to skip the command if there is no word list
+     * @throws Exception
+     */
+    void runDawgCommand(String cmdStr, boolean optional) throws Exception {
+        List<String> cmd = getCommand(cmdStr);
+        int n = cmd.size();
+        if (optional && !new File(inputDataDir, cmd.get(n - 3)).exists()) {
+            return;
+        }
+        List<String> inputs = Arrays.asList(cmd.get(n - 3), cmd.get(n - 1));
+        List<String> outputs = Arrays.asList(cmd.get(n - 2));
+        String step = "wordlist2dawg:" + cmd.get(n - 2);
+        if (!isUpToDate(step, cmd.toString(), inputs, outputs)) {
+            runCommand(null, cmd);
+            record(step, cmd.toString(), inputs, outputs);
+        }
+    }
+
+    /**
+     * Runs per-image commands, skipping those whose image and other inputs
+     * have not changed since they last ran.
+     *
+     * @param stage stage name
+     * @param cmds commands from <code>getImageCommands</code>
+     * @param outputExt extension of the output file
+     * @param inputExts extensions of input files other than the image
+     * @throws Exception
+     */
+    void runImageCommands(String stage, List<List<String>> cmds, String outputExt, String... inputExts) throws Exception {
+        if (manifest == null) {
+            runCommands(cmds);
+            return;
+        }
+
+        List<List<String>> pending = new ArrayList<List<String>>();
+        List<List<String>> pendingInputs = new ArrayList<List<String>>();
+        List<List<String>> pendingOutputs = new ArrayList<List<String>>();
+        for (List<String> cmd : cmds) {
+            List<String> inputs = new ArrayList<String>();
+            inputs.add(cmd.get(1));
+            for (String ext : inputExts) {
+                inputs.add(cmd.get(2) + ext);
+            }
+            List<String> outputs = Arrays.asList(cmd.get(2) + outputExt);
+            if (!manifest.isUpToDate(stage + ":" + cmd.get(1), cmd.toString(), inputs, outputs)) {
+                pending.add(cmd);
+                pendingInputs.add(inputs);
+                pendingOutputs.add(outputs);
+            }
+        }
+
+        if (pending.size() < cmds.size()) {
+            writeMessage(String.format("Skipped %d of %d unchanged images.", cmds.size() - pending.size(), cmds.size()));
+        }
+        runCommands(pending, i -> {
+            try {
+                List<String> cmd = pending.get(i);
+                manifest.record(stage + ":" + cmd.get(1), cmd.toString(), pendingInputs.get(i), pendingOutputs.get(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Checks the manifest for a stage that can be skipped.
+     *
+     * @return true if the stage is up to date
+     */
+    boolean isUpToDate(String step, String command, List<String> inputs, List<String> outputs) throws IOException {
+        if (manifest != null && manifest.isUpToDate(step, command, inputs, outputs)) {
+            logger.log(Level.INFO, "Skipped {0}", step);
+            writeMessage("Skipped " + step + "; inputs unchanged.");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a completed stage in the manifest.
+     */
+    void record(String step, String command, List<String> inputs, List<String> outputs) throws IOException {
+        if (manifest != null) {
+            manifest.record(step, command, inputs, outputs);
+        }
+    }
+
     /**
      * Runs given command.
      *
@@ -448,27 +745,181 @@ public class TessTrainer {
     void runCommand(List<String> cmd) throws Exception {
         logger.log(Level.INFO, "Command: {0}", cmd.toString());
         writeMessage(cmd.toString());
-        pb.command(cmd);
+        CommandResult result = execute(cmd, null);
+        logger.log(Level.INFO, "Exit value = {0}", result.exitValue);
+        writeMessage(result.output);
+
+        if (result.exitValue != 0) {
+            throw new RuntimeException(getErrorMessage(cmd, result.output));
+        }
+    }
+
+    /**
+     * Runs given command and writes the header, command and output together,
+     * so they are not interleaved with those of stages running alongside.
+     *
+     * @param header
+     * @param cmd
+     * @throws Exception
+     */
+    void runCommand(String header, List<String> cmd) throws Exception {
+        logger.log(Level.INFO, "Command: {0}", cmd.toString());
+        CommandResult result = execute(cmd, null);
+        logger.log(Level.INFO, "Exit value = {0}", result.exitValue);
+        synchronized (this) {
+            if (header != null) {
+                writeMessage(header);
+            }
+            writeMessage(cmd.toString());
+            writeMessage(result.output);
+        }
+
+        if (result.exitValue != 0) {
+            throw new RuntimeException(getErrorMessage(cmd, result.output));
+        }
+    }
+
+    /**
+     * Runs independent commands, up to <code>concurrency</code> at a time. The
+     * output of each command is written out in the order of the commands. On
+     * the first failure, commands not yet started are skipped and running
+     * ones are stopped.
+     *
+     * @param cmds
+     * @throws Exception
+     */
+    void runCommands(List<List<String>> cmds) throws Exception {
+        runCommands(cmds, null);
+    }
+
+    /**
+     * Runs independent commands, notifying each success in command order.
+     *
+     * @param cmds
+     * @param succeeded called on this thread with the index of each command
+     * that succeeded, or <code>null</code>
+     * @throws Exception
+     */
+    void runCommands(List<List<String>> cmds, IntConsumer succeeded) throws Exception {
+        if (concurrency <= 1 || cmds.size() <= 1) {
+            for (int i = 0; i < cmds.size(); i++) {
+                runCommand(cmds.get(i));
+                if (succeeded != null) {
+                    succeeded.accept(i);
+                }
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, cmds.size()));
+        CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+        Set<Process> running = Collections.synchronizedSet(new HashSet<Process>());
+        CommandResult[] results = new CommandResult[cmds.size()];
+
+        try {
+            for (int i = 0; i < cmds.size(); i++) {
+                final int index = i;
+                completionService.submit(() -> {
+                    results[index] = execute(cmds.get(index), running);
+                    return index;
+                });
+            }
+
+            int next = 0; // next command whose output is to be written
+            boolean[] done = new boolean[cmds.size()];
+            for (int count = 0; count < cmds.size(); count++) {
+                int index = completionService.take().get();
+                done[index] = true;
+                CommandResult result = results[index];
+                if (result.exitValue != 0) {
+                    logger.log(Level.INFO, "Command: {0}", cmds.get(index).toString());
+                    logger.log(Level.INFO, "Exit value = {0}", result.exitValue);
+                    writeMessage(cmds.get(index).toString());
+                    writeMessage(result.output);
+                    throw new RuntimeException(getErrorMessage(cmds.get(index), result.output));
+                }
+                while (next < cmds.size() && done[next]) {
+                    logger.log(Level.INFO, "Command: {0}", cmds.get(next).toString());
+                    logger.log(Level.INFO, "Exit value = {0}", results[next].exitValue);
+                    writeMessage(cmds.get(next).toString());
+                    writeMessage(results[next].output);
+                    if (succeeded != null) {
+                        succeeded.accept(next);
+                    }
+                    next++;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executor.shutdownNow();
+            synchronized (running) {
+                for (Process process : running) {
+                    process.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a command in its own process, in the training data directory.
+     *
+     * @param cmd
+     * @param running processes currently running, or <code>null</code>
+     * @return exit value and output of the command
+     * @throws Exception
+     */
+    CommandResult execute(List<String> cmd, Set<Process> running) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.directory(new File(inputDataDir));
+        pb.redirectErrorStream(true);
         Process process = pb.start();
+        if (running != null) {
+            running.add(process);
+        }
 
-        // any output?
-        StreamGobbler outputGobbler = new StreamGobbler(process.getInputStream());
-        outputGobbler.start();
-
-        int w = process.waitFor();
-        logger.log(Level.INFO, "Exit value = {0}", w);
-        writeMessage(outputGobbler.getMessage());
-
-        if (w != 0) {
-            String msg;
-            if (cmd.get(0).contains("shapeclustering")) {
-                msg = "An error has occurred. font_properties could be missing a font entry.";
-            } else if (cmd.get(0).contains("text2image")) {
-                msg = "text2image error.\n" + outputGobbler.getMessage().replace(",.", ".") + "Try a different font or use alternate methods.";
-            } else {
-                msg = outputGobbler.getMessage();
+        try {
+            // any output?
+            StreamGobbler outputGobbler = new StreamGobbler(process.getInputStream());
+            outputGobbler.start();
+
+            int w = process.waitFor();
+            outputGobbler.join();
+            return new CommandResult(w, outputGobbler.getMessage());
+        } catch (InterruptedException e) {
+            process.destroy();
+            throw e;
+        } finally {
+            if (running != null) {
+                running.remove(process);
             }
-            throw new RuntimeException(msg);
+        }
+    }
+
+    String getErrorMessage(List<String> cmd, String output) {
+        String msg;
+        if (cmd.get(0).contains("shapeclustering")) {
+            msg = "An error has occurred. font_properties could be missing a font entry.";
+        } else if (cmd.get(0).contains("text2image")) {
+            msg = "text2image error.\n" + output.replace(",.", ".") + "Try a different font or use alternate methods.";
+        } else {
+            msg = output;
+        }
+        return msg;
+    }
+
+    /**
+     * Exit value and output of a command.
+     */
+    static class CommandResult {
+
+        final int exitValue;
+        final String output;
+
+        CommandResult(int exitValue, String output) {
+            this.exitValue = exitValue;
+            this.output = output;
         }
     }
 
@@ -477,7 +928,7 @@ public class TessTrainer {
      *
      * @param message
      */
-    void writeMessage(String message) {
+    synchronized void writeMessage(String message) {
         setText(message);
 //        System.out.println(message);
     }
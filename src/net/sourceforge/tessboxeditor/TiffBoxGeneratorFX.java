@@ -19,56 +19,68 @@ import java.awt.Graphics2D;
 import java.awt.font.TextAttribute;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.logging.Level;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import javafx.embed.swing.SwingFXUtils;
-import javafx.geometry.BoundingBox;
 import javafx.geometry.Bounds;
 import javafx.geometry.Insets;
-import javafx.geometry.Rectangle2D;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
-import javafx.scene.shape.Shape;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 
-import net.sourceforge.tessboxeditor.datamodel.TessBox;
-import net.sourceforge.tessboxeditor.datamodel.TessBoxCollection;
+import net.sourceforge.tessboxeditor.datamodel.BoxColumns;
 import net.sourceforge.tessboxeditor.utilities.ImageUtils;
-import net.sourceforge.tess4j.util.ImageIOHelper;
 import static net.sourceforge.tessboxeditor.utilities.Utils.deriveFont;
 import net.sourceforge.vietocr.util.Utils;
 
 public class TiffBoxGeneratorFX {
 
-    static final String EOL = System.getProperty("line.separator");
     private final List<List<String>> textPages;
-    private final List<BufferedImage> imagePages = new ArrayList<>();
-    private final List<TessBoxCollection> boxPages = new ArrayList<>();
     private final Font font;
     private int width, height;
     private int noiseAmount;
+    private Long noiseSeed; // null for different noise on each run
     private int margin = 100;
     private String fileName = "fontname.exp0";
     private File outputFolder;
-    private final int COLOR_WHITE = java.awt.Color.WHITE.getRGB();
-    private final int COLOR_BLACK = java.awt.Color.BLACK.getRGB();
     private float tracking = TextAttribute.TRACKING_LOOSE; // 0.04
     private int leading = 12;
     private boolean isAntiAliased;
+    private int concurrency = Runtime.getRuntime().availableProcessors();
     private final File baseDir = Utils.getBaseDir(TiffBoxGeneratorFX.this);
     private final TextFlow textFlow;
 
     private final static Logger logger = Logger.getLogger(TiffBoxGeneratorFX.class.getName());
 
+    /**
+     * Image and boxes of a page.
+     */
+    private static class Page {
+
+        final BufferedImage image;
+        final BoxColumns boxes;
+
+        Page(BufferedImage image, BoxColumns boxes) {
+            this.image = image;
+            this.boxes = boxes;
+        }
+    }
+
     public TiffBoxGeneratorFX(List<List<String>> textPages, Font font, int width, int height) {
         this.textPages = textPages;
         this.font = deriveFont(font, font.getSize() * 4); // adjustment
@@ -81,152 +93,76 @@ public class TiffBoxGeneratorFX {
         textFlow.setLineSpacing(leading + 4); // adjustment
     }
 
-    public void create() {
-        this.layoutPages();
-        this.saveMultipageTiff();
-        this.saveBoxFile();
-    }
-
-    String createFileName(Font font) {
-        return font.getFamily().replace(" ", "").toLowerCase() + (font.getStyle().contains("Bold") ? "b" : "") + (font.getStyle().contains("Italic") ? "i" : "");
-    }
-
     /**
-     * Formats box content.
+     * Creates the TIFF and box files.
+     * <p>
+     * Pages are laid out and snapshot on the calling thread, which must be the
+     * JavaFX application thread. Each snapshot is then converted, reduced in
+     * bit depth and given noise on a pool of worker threads, while the next
+     * page is being laid out. Finished pages are appended to both files in
+     * order by a writer thread and then dropped, so that memory use does not
+     * grow with the number of pages.
      *
-     * @return
+     * @throws IOException
      */
-    private String formatOutputString() {
-        StringBuilder sb = new StringBuilder();
-//        String combiningSymbols = readCombiningSymbols();
-        for (short pageIndex = 0; pageIndex < imagePages.size(); pageIndex++) {
-            TessBoxCollection boxCol = boxPages.get(pageIndex);
-//            boxCol.setCombiningSymbols(combiningSymbols);
-//            boxCol.combineBoxes();
-
-            for (TessBox box : boxCol.toList()) {
-                Rectangle2D rect = box.getRect();
-                sb.append(String.format("%s %.0f %.0f %.0f %.0f %d", box.getCharacter(), rect.getMinX(), height - rect.getMinY() - rect.getHeight(), rect.getMinX() + rect.getWidth(), height - rect.getMinY(), pageIndex)).append(EOL);
+    public void create() throws IOException {
+        File tiffFile = new File(outputFolder, fileName + ".tif");
+        String compressionType = (isAntiAliased || noiseAmount != 0) ? "LZW" : "CCITT T.6";  // CCITT T.6 for bitonal; LZW for others
+        try (TiffPageWriter tiffOut = new TiffPageWriter(tiffFile, compressionType);
+                BoxFileWriter boxOut = BoxFileWriter.open(new File(outputFolder, fileName + ".box"), false)) {
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency, BoxEditorController.daemonThreadFactory("TiffBoxGenerator"));
+            ExecutorService writeExecutor = Executors.newSingleThreadExecutor(BoxEditorController.daemonThreadFactory("TiffBoxWriter"));
+            Deque<Future<?>> pending = new ArrayDeque<>();
+            try {
+                this.layoutPages(executor, writeExecutor, pending, tiffOut, boxOut);
+            } finally {
+                // on failure, stop the writer before the files are closed
+                for (Future<?> write : pending) {
+                    write.cancel(true);
+                }
+                executor.shutdownNow();
+                writeExecutor.shutdownNow();
+                awaitTermination(writeExecutor);
             }
         }
-//        if (isTess2_0Format) {
-//            return sb.toString().replace(" 0" + EOL, EOL); // strip the ending zeroes
-//        }
-        return sb.toString();
     }
 
     /**
-     * Gets bounding box of a Text node.
+     * Waits for the tasks of an executor that has been shut down to end.
      *
-     * @param text
-     * @return bounding box
+     * @param executor
+     * @throws IOException if interrupted
      */
-    Bounds getBoundingBox(Text text) {
-        Bounds tb = text.getBoundsInParent();
-        Rectangle stencil = new Rectangle(tb.getMinX(), tb.getMinY(), tb.getWidth(), tb.getHeight());
-        Shape intersection = Shape.intersect(text, stencil);
-        Bounds ib = intersection.getBoundsInParent();
-        return ib;
-    }
-
-    /**
-     * Tightens bounding box in four directions b/c Java cannot produce bounding
-     * boxes as tight as Tesseract can. Exam only the first pixel on each side.
-     *
-     * @param rect
-     * @param bi
-     */
-    private Bounds tightenBoundingBox(Bounds rectShape, BufferedImage bi) {
-        java.awt.Rectangle rect = new java.awt.Rectangle((int) rectShape.getMinX(), (int) rectShape.getMinY(), (int) Math.ceil(rectShape.getWidth()), (int) Math.ceil(rectShape.getHeight()));
-
-        // left
-        int endX = rect.x + 2;
-        outerLeft:
-        for (int x = rect.x; x < endX; x++) {
-            for (int y = rect.y; y < rect.y + rect.height; y++) {
-                int color = bi.getRGB(x, y);
-                if (color == COLOR_BLACK) {
-                    break outerLeft;
-                }
-            }
-            rect.x++;
-//            rect.width--;
-        }
-
-        // right
-        endX = rect.x + rect.width - 4;
-        outerRight:
-        for (int x = rect.x + rect.width; x > endX; x--) {
-            for (int y = rect.y; y < rect.y + rect.height; y++) {
-                int color = bi.getRGB(x, y);
-                if (color == COLOR_BLACK) {
-                    break outerRight;
-                }
-            }
-            rect.width = x - rect.x + 1;
-        }
-
-        //TODO: Need to account for Java's incorrect over-tightening the top of the bounding box
-        // Need to move the top up by 1px and increase the height by 1px
-        // top
-        int endY = rect.y + 3;
-        int startY = rect.y - 1;
-        outerTop:
-        for (int y = startY; y < endY; y++) {
-            for (int x = rect.x; x < rect.x + rect.width; x++) {
-                int color = bi.getRGB(x, y);
-                if (color == COLOR_BLACK) {
-                    if (y == startY) {
-                        rect.y--;
-//                        rect.height++;
-                        continue outerTop;
-                    } else {
-                        break outerTop;
-                    }
-                }
-            }
-            if (y != startY) {
-                rect.y++;
-            }
-        }
-
-        // bottom
-        endY = rect.y + rect.height - 4;
-        outerBottom:
-        for (int y = rect.y + rect.height - 1; y > endY; y--) {
-            for (int x = rect.x; x < rect.x + rect.width; x++) {
-                int color = bi.getRGB(x, y);
-                if (color == COLOR_BLACK) {
-                    break outerBottom;
-                }
+    private static void awaitTermination(ExecutorService executor) throws IOException {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // a page write in progress runs to its end
             }
-            rect.height--;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
         }
-
-        return new BoundingBox(rect.x, rect.y, rect.width, rect.height);
     }
 
-    /**
-     * Creates box file.
-     */
-    private void saveBoxFile() {
-        try {
-            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(outputFolder, fileName + ".box")), StandardCharsets.UTF_8))) {
-                out.write(formatOutputString());
-            }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, e.getMessage(), e);
-        }
+    String createFileName(Font font) {
+        return font.getFamily().replace(" ", "").toLowerCase() + (font.getStyle().contains("Bold") ? "b" : "") + (font.getStyle().contains("Italic") ? "i" : "");
     }
 
     /**
-     * Add Text nodes to TextFlow, which is one per page.
+     * Add Text nodes to TextFlow, which is one per page. Only a few pages are
+     * waiting to be processed or written at any time, so that pages do not
+     * pile up when layout is faster than processing.
+     *
+     * @param executor runs the processing of page images
+     * @param writeExecutor writes pages, in order
+     * @param pending writes of pages not yet known to be done
+     * @param tiffOut TIFF file
+     * @param boxOut box file
      */
-    private void layoutPages() {
-        boxPages.clear();
-        imagePages.clear();
-
+    private void layoutPages(ExecutorService executor, ExecutorService writeExecutor, Deque<Future<?>> pending, TiffPageWriter tiffOut, BoxFileWriter boxOut) throws IOException {
         Scene scene = new Scene(textFlow, width, height);
+        SplittableRandom pageSeeds = noiseSeed != null ? new SplittableRandom(noiseSeed) : null; // seeds taken in page order
+        int pageIndex = 0;
 
         for (List<String> textPage : textPages) {
             List<Text> texts = new ArrayList<Text>();
@@ -249,48 +185,114 @@ public class TiffBoxGeneratorFX {
 //        stage.setTitle("TIFF/Boxes");
 //        stage.setScene(scene);
 //        stage.show();
-            drawPage();
+            Long seed = pageSeeds != null ? pageSeeds.nextLong() : null;
+            Future<Page> page = drawPage(executor, seed);
+            final int index = pageIndex++;
+            pending.add(writeExecutor.submit(() -> {
+                Page p = page.get();
+                tiffOut.writePage(p.image);
+                boxOut.write(p.boxes, index);
+                boxOut.flush();
+                return null;
+            }));
+            if (pending.size() > concurrency * 2) {
+                await(pending.remove());
+            }
+        }
+        while (!pending.isEmpty()) {
+            await(pending.remove());
         }
     }
 
     /**
-     * Takes snapshot of each text flow and store as <code>BufferedImage</code>.
+     * Waits for a page to be processed and written.
+     *
+     * @param future write of the page
+     * @throws IOException
      */
-    private void drawPage() {
-        BufferedImage bi;// = new BufferedImage(width, height, isAntiAliased ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_BYTE_BINARY);
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof ExecutionException && cause.getCause() != null) {
+                cause = cause.getCause(); // failure in processing the page
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause; // such as OutOfMemoryError
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Takes snapshot of the text flow and notes the layout cell of each
+     * character. The snapshot is converted to <code>BufferedImage</code>, and
+     * its boxes found from the ink in each cell, in the background.
+     *
+     * @param executor runs the conversion
+     * @param noiseSeed seed of the page noise, or <code>null</code>
+     * @return page
+     */
+    private Future<Page> drawPage(ExecutorService executor, Long noiseSeed) {
         final SnapshotParameters snapshotParameters = new SnapshotParameters();
         snapshotParameters.setFill(Color.WHITE);
 
         WritableImage snapshot = textFlow.snapshot(snapshotParameters, null);
-        bi = SwingFXUtils.fromFXImage(snapshot, null);
-        width = bi.getWidth();
-        height = bi.getHeight();
-        bi = redraw(bi);
-        imagePages.add(bi);
-
-        TessBoxCollection boxCol = new TessBoxCollection(); // for each page
-        boxPages.add(boxCol);
-        short pageNum = 0;
+        width = (int) snapshot.getWidth();
+        height = (int) snapshot.getHeight();
+        final int pageHeight = height;
+
         List<Node> nodes = textFlow.getChildren();
-        for (int i = 0; i < nodes.size(); i++) {
-            Text text = (Text) nodes.get(i);
+        List<String> chars = new ArrayList<>(nodes.size());
+        int[] cells = new int[nodes.size() * 4];
+        for (Node node : nodes) {
+            Text text = (Text) node;
             String ch = text.getText();
             if (ch.length() == 0 || Character.isWhitespace(ch.charAt(0))) {
                 // skip spaces
                 continue;
             }
 
-            // get bounding box for each character
-            Bounds bounds = getBoundingBox(text);
-//            System.out.println(bounds);
-            if (bounds.getWidth() <= 0 || bounds.getHeight() <= 0) {
-                // skip bad boxes
-                continue;
+            Bounds tb = text.getBoundsInParent();
+            int i = chars.size() * 4;
+            cells[i] = (int) Math.floor(tb.getMinX());
+            cells[i + 1] = (int) Math.floor(tb.getMinY());
+            cells[i + 2] = (int) Math.ceil(tb.getMaxX());
+            cells[i + 3] = (int) Math.ceil(tb.getMaxY());
+            chars.add(ch);
+        }
+        final int[] glyphCells = Arrays.copyOf(cells, chars.size() * 4);
+
+        return executor.submit(() -> {
+            BufferedImage bi = redraw(SwingFXUtils.fromFXImage(snapshot, null));
+
+            // get bounding box for each character, before noise is added
+            int[] boxes = GlyphBoxExtractor.extract(bi.getRaster(), glyphCells);
+            BoxColumns boxCol = new BoxColumns(chars.size());
+            for (int i = 0; i < chars.size(); i++) {
+                int left = boxes[i * 4];
+                int top = boxes[i * 4 + 1];
+                int right = boxes[i * 4 + 2];
+                int bottom = boxes[i * 4 + 3];
+                if (right <= left || bottom <= top) {
+                    // skip characters without ink
+                    continue;
+                }
+                boxCol.add(chars.get(i), left, pageHeight - bottom, right, pageHeight - top);
             }
 
-//            bounds = tightenBoundingBox(bounds, bi);
-            boxCol.add(new TessBox(ch, new Rectangle2D(bounds.getMinX(), bounds.getMinY(), bounds.getWidth(), bounds.getHeight()), pageNum));
-        }
+            if (noiseAmount != 0) {
+                bi = noiseSeed != null ? ImageUtils.addNoise(bi, noiseAmount, noiseSeed) : ImageUtils.addNoise(bi, noiseAmount);
+            }
+            return new Page(bi, boxCol);
+        });
     }
 
     /**
@@ -308,25 +310,6 @@ public class TiffBoxGeneratorFX {
         return newImage;
     }
 
-    /**
-     * Creates a multi-page TIFF image.
-     */
-    private void saveMultipageTiff() {
-        try {
-            File tiffFile = new File(outputFolder, fileName + ".tif");
-            tiffFile.delete();
-            BufferedImage[] images = imagePages.toArray(new BufferedImage[imagePages.size()]);
-            if (noiseAmount != 0) {
-                for (int i = 0; i < images.length; i++) {
-                    images[i] = ImageUtils.addNoise(images[i], noiseAmount);
-                }
-            }
-            ImageIOHelper.mergeTiff(images, tiffFile, (isAntiAliased || noiseAmount != 0) ? "LZW" : "CCITT T.6");  // CCITT T.6 for bitonal; LZW for others);
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, e.getMessage(), e);
-        }
-    }
-
     /**
      * Sets output filename.
      *
@@ -386,6 +369,25 @@ public class TiffBoxGeneratorFX {
         this.noiseAmount = noiseAmount;
     }
 
+    /**
+     * Sets the seed of the injected noise, so that generating the same text
+     * again gives the same images.
+     *
+     * @param noiseSeed the seed, or <code>null</code> for random noise
+     */
+    public void setNoiseSeed(Long noiseSeed) {
+        this.noiseSeed = noiseSeed;
+    }
+
+    /**
+     * Sets the maximum number of pages to process at once.
+     *
+     * @param concurrency number of worker threads
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
     /**
      * Sets margin of text within image.
      *
@@ -0,0 +1,109 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import com.github.jaiimageio.plugins.tiff.BaselineTIFFTagSet;
+import com.github.jaiimageio.plugins.tiff.TIFFDirectory;
+import com.github.jaiimageio.plugins.tiff.TIFFField;
+import com.github.jaiimageio.plugins.tiff.TIFFImageWriteParam;
+import com.github.jaiimageio.plugins.tiff.TIFFTag;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Writes a multi-page TIFF image one page at a time, so that pages need not
+ * be held in memory until all of them are ready. Pages are written at 300 DPI,
+ * as by <code>ImageIOHelper.mergeTiff</code>.
+ */
+class TiffPageWriter implements Closeable {
+
+    private static final int DPI = 300;
+
+    private final ImageWriter writer;
+    private final ImageOutputStream out;
+    private final TIFFImageWriteParam param;
+
+    /**
+     * Creates a TIFF file, replacing any existing one.
+     *
+     * @param file TIFF file
+     * @param compressionType TIFF compression, such as "LZW" or "CCITT T.6"
+     * @throws IOException
+     */
+    TiffPageWriter(File file, String compressionType) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+        if (!writers.hasNext()) {
+            throw new RuntimeException("Need to install JAI Image I/O package.\nhttps://github.com/jai-imageio/jai-imageio-core");
+        }
+        writer = writers.next();
+        param = new TIFFImageWriteParam(Locale.US);
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionType(compressionType);
+
+        file.delete(); // the output stream would not truncate it
+        out = ImageIO.createImageOutputStream(file);
+        try {
+            writer.setOutput(out);
+            writer.prepareWriteSequence(null);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            writer.dispose();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a page.
+     *
+     * @param image page image
+     * @throws IOException
+     */
+    void writePage(BufferedImage image) throws IOException {
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+        writer.writeToSequence(new IIOImage(image, null, setResolution(metadata)), param);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.endWriteSequence();
+        } finally {
+            out.close();
+            writer.dispose();
+        }
+    }
+
+    private static IIOMetadata setResolution(IIOMetadata metadata) throws IOException {
+        TIFFDirectory dir = TIFFDirectory.createFromMetadata(metadata);
+        BaselineTIFFTagSet base = BaselineTIFFTagSet.getInstance();
+        long[][] resolution = {{DPI, 1}};
+        dir.addTIFFField(new TIFFField(base.getTag(BaselineTIFFTagSet.TAG_X_RESOLUTION), TIFFTag.TIFF_RATIONAL, 1, resolution));
+        dir.addTIFFField(new TIFFField(base.getTag(BaselineTIFFTagSet.TAG_Y_RESOLUTION), TIFFTag.TIFF_RATIONAL, 1, resolution));
+        dir.addTIFFField(new TIFFField(base.getTag(BaselineTIFFTagSet.TAG_RESOLUTION_UNIT), BaselineTIFFTagSet.RESOLUTION_UNIT_INCH));
+        return dir.getAsMetadata();
+    }
+}
@@ -244,6 +244,8 @@ public class TrainerController implements Initializable {
 
         public TrainingWorker() {
             trainer = new TessTrainer(tessDirectory, trainDataDirectory, tfLang.getText(), tfBootstrapLang.getText(), chbRTL.isSelected());
+            trainer.setConcurrency(prefs.getInt("trainingConcurrency", Runtime.getRuntime().availableProcessors()));
+            trainer.setIncremental(prefs.getBoolean("incrementalTraining", true));
             progressBar1.progressProperty().unbind();
             progressBar1.progressProperty().bind(this.progressProperty());
             labelStatus.textProperty().unbind();
@@ -0,0 +1,195 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Build cache of training stages, kept in the training data directory.
+ * <p>
+ * For each stage, or per-image step, the manifest records a digest of its
+ * command and the content of its input files, and a digest of the content of
+ * its output files. A stage is up to date when both digests match those of
+ * the files as they are now. File hashes are cached by size and modification
+ * time, so unchanged files are not read again.
+ */
+class TrainingManifest {
+
+    static final String MANIFEST_FILE = "training.manifest";
+
+    private static final String STEP_PREFIX = "step:";
+    private static final String FILE_PREFIX = "file:";
+    private static final String MISSING = "-";
+
+    private final File dir;
+    private final Properties entries = new Properties();
+
+    private final static Logger logger = Logger.getLogger(TrainingManifest.class.getName());
+
+    /**
+     * Loads the manifest of a training data directory, if any.
+     *
+     * @param dir training data directory
+     */
+    TrainingManifest(File dir) {
+        this.dir = dir;
+        File file = new File(dir, MANIFEST_FILE);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                entries.load(in);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, e.getMessage(), e);
+                entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Whether a step ran before with the same command and inputs, and its
+     * outputs are still as it left them.
+     *
+     * @param step step name
+     * @param command command line(s) of the step
+     * @param inputs input file names, relative to the data directory
+     * @param outputs output file names, relative to the data directory
+     * @return true if the step can be skipped
+     */
+    synchronized boolean isUpToDate(String step, String command, List<String> inputs, List<String> outputs) throws IOException {
+        String recorded = entries.getProperty(STEP_PREFIX + step);
+        if (recorded == null) {
+            return false;
+        }
+        String outputDigest = digest(null, outputs);
+        return outputDigest != null && recorded.equals(digest(command, inputs) + " " + outputDigest);
+    }
+
+    /**
+     * Records a step that has just completed.
+     *
+     * @param step step name
+     * @param command command line(s) of the step
+     * @param inputs input file names, relative to the data directory
+     * @param outputs output file names, relative to the data directory
+     */
+    synchronized void record(String step, String command, List<String> inputs, List<String> outputs) throws IOException {
+        String outputDigest = digest(null, outputs);
+        if (outputDigest == null) {
+            entries.remove(STEP_PREFIX + step); // no complete output to reuse
+        } else {
+            entries.setProperty(STEP_PREFIX + step, digest(command, inputs) + " " + outputDigest);
+        }
+    }
+
+    /**
+     * Writes the manifest to the data directory.
+     *
+     * @throws IOException
+     */
+    synchronized void save() throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(dir, MANIFEST_FILE))) {
+            entries.store(out, "Training build cache");
+        }
+    }
+
+    /**
+     * Digests a command and the content of files.
+     *
+     * @param command command line, or <code>null</code> for outputs
+     * @param files
+     * @return digest, or <code>null</code> if a file is missing and no
+     * command is given
+     */
+    private String digest(String command, List<String> files) throws IOException {
+        MessageDigest md = newDigest();
+        if (command != null) {
+            md.update(command.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+        }
+        for (String name : files) {
+            String hash = hash(name);
+            if (hash == null) {
+                if (command == null) {
+                    return null;
+                }
+                hash = MISSING;
+            }
+            md.update(name.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            md.update(hash.getBytes(StandardCharsets.US_ASCII));
+            md.update((byte) 0);
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Gets the content hash of a file, reading it only if its size or
+     * modification time changed since it was last hashed.
+     *
+     * @param name file name, relative to the data directory
+     * @return hash, or <code>null</code> if there is no such file
+     */
+    private String hash(String name) throws IOException {
+        File file = new File(dir, name);
+        if (!file.isFile()) {
+            return null;
+        }
+        String stamp = file.length() + " " + file.lastModified();
+        String cached = entries.getProperty(FILE_PREFIX + name);
+        if (cached != null && cached.startsWith(stamp + " ")) {
+            return cached.substring(stamp.length() + 1);
+        }
+
+        MessageDigest md = newDigest();
+        byte[] buf = new byte[65536];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                md.update(buf, 0, n);
+            }
+        }
+        String hash = toHex(md.digest());
+        entries.setProperty(FILE_PREFIX + name, stamp + " " + hash);
+        return hash;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE provides SHA-256
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
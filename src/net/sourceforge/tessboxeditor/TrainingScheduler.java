@@ -0,0 +1,199 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs training stages as a dependency graph on a pool of worker threads.
+ * <p>
+ * A stage starts as soon as all the stages it depends on have completed. The
+ * first failure stops the run: stages not yet started are dropped and running
+ * ones are interrupted. Each stage is timed, so that the critical path of a
+ * run can be reported.
+ */
+class TrainingScheduler {
+
+    /**
+     * Work of a stage.
+     */
+    interface Action {
+
+        void run() throws Exception;
+    }
+
+    /**
+     * A node of the graph.
+     */
+    static class Stage {
+
+        final String name;
+        final Action action;
+        final List<Stage> dependencies = new ArrayList<Stage>();
+        final List<Stage> dependents = new ArrayList<Stage>();
+        long startTime;
+        long endTime;
+
+        Stage(String name, Action action) {
+            this.name = name;
+            this.action = action;
+        }
+
+        long getDuration() {
+            return endTime - startTime;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<Stage>();
+    private long startTime;
+    private long endTime;
+
+    /**
+     * Adds a stage. Since dependencies must be added first, the graph cannot
+     * have cycles.
+     *
+     * @param name stage name
+     * @param action work of the stage
+     * @param dependencies stages to complete first; <code>null</code> entries
+     * are ignored
+     * @return the stage
+     */
+    Stage add(String name, Action action, Stage... dependencies) {
+        Stage stage = new Stage(name, action);
+        for (Stage dependency : dependencies) {
+            if (dependency != null) {
+                stage.dependencies.add(dependency);
+                dependency.dependents.add(stage);
+            }
+        }
+        stages.add(stage);
+        return stage;
+    }
+
+    /**
+     * Runs all stages.
+     *
+     * @param threads maximum number of stages to run at once
+     * @throws Exception the first failure of a stage
+     */
+    void run(int threads) throws Exception {
+        if (stages.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, stages.size())));
+        CompletionService<Stage> completionService = new ExecutorCompletionService<Stage>(executor);
+        Map<Stage, Integer> pending = new HashMap<Stage, Integer>(); // number of dependencies not yet completed
+        startTime = System.nanoTime();
+
+        try {
+            for (Stage stage : stages) {
+                pending.put(stage, stage.dependencies.size());
+                if (stage.dependencies.isEmpty()) {
+                    submit(completionService, stage);
+                }
+            }
+
+            for (int count = 0; count < stages.size(); count++) {
+                Stage stage = completionService.take().get();
+                for (Stage dependent : stage.dependents) {
+                    int n = pending.get(dependent) - 1;
+                    pending.put(dependent, n);
+                    if (n == 0) {
+                        submit(completionService, dependent);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            endTime = System.nanoTime();
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(CompletionService<Stage> completionService, Stage stage) {
+        completionService.submit(() -> {
+            stage.startTime = System.nanoTime();
+            try {
+                stage.action.run();
+            } finally {
+                stage.endTime = System.nanoTime();
+            }
+            return stage;
+        });
+    }
+
+    /**
+     * Gets the time taken by each stage and the critical path of the last
+     * run, that is, the chain of dependent stages that determined its total
+     * time.
+     *
+     * @return report text
+     */
+    String getReport() {
+        StringBuilder sb = new StringBuilder("** Stage Timings **");
+        for (Stage stage : stages) {
+            sb.append(String.format("\n%-24s %8.1f s   (started at %.1f s)", stage.name, seconds(stage.getDuration()), seconds(stage.startTime - startTime)));
+        }
+
+        // walk back from the stage that finished last, through the dependency that finished last
+        LinkedList<Stage> path = new LinkedList<Stage>();
+        Stage stage = null;
+        for (Stage s : stages) {
+            if (stage == null || s.endTime > stage.endTime) {
+                stage = s;
+            }
+        }
+        long pathTime = 0;
+        while (stage != null) {
+            path.addFirst(stage);
+            pathTime += stage.getDuration();
+            Stage latest = null;
+            for (Stage dependency : stage.dependencies) {
+                if (latest == null || dependency.endTime > latest.endTime) {
+                    latest = dependency;
+                }
+            }
+            stage = latest;
+        }
+
+        sb.append(String.format("\nCritical path: %.1f s of %.1f s elapsed", seconds(pathTime), seconds(endTime - startTime)));
+        StringBuilder names = new StringBuilder();
+        for (Stage s : path) {
+            if (names.length() > 0) {
+                names.append(" -> ");
+            }
+            names.append(s.name);
+        }
+        sb.append("\n").append(names);
+        return sb.toString();
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
@@ -15,20 +15,47 @@
  */
 package net.sourceforge.tessboxeditor.control;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.beans.InvalidationListener;
 import javafx.geometry.Point2D;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TableView;
 import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import net.sourceforge.tessboxeditor.datamodel.*;
 import net.sourceforge.vietocr.util.Utils;
 
-public class ImageCanvas extends Canvas {
+/**
+ * Page image with box outlines. The pane takes the size of the page, but only
+ * the part visible in the enclosing scroll pane is drawn, on a canvas the size
+ * of the viewport. The image is drawn from tiles cut from the page on demand.
+ */
+public class ImageCanvas extends Pane {
+
+    private static final int STROKE_MARGIN = 2; // extent of box outline and its antialiasing beyond the box
+    private static final int TILE_SIZE = 512;
+    private static final int TILE_CACHE_SIZE = 32;
+
+    private final Canvas canvas = new Canvas();
+    private ScrollPane scrollPane;
+    private Rectangle2D viewport = Rectangle2D.EMPTY; // visible area of the page
+    private final Map<Long, Image> tiles = new LinkedHashMap<Long, Image>(TILE_CACHE_SIZE + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest) {
+            return size() > TILE_CACHE_SIZE;
+        }
+    };
 
     private TessBoxCollection boxes;
     private TableView tableView;
@@ -38,12 +65,16 @@ public class ImageCanvas extends Canvas {
     Tooltip tooltip;
     TessBox prevBox;
     boolean installed;
+    private boolean fullRepaint = true;
 
     /**
      * Creates a new instance of ImageCanvas
      */
     public ImageCanvas() {
         tooltip = new Tooltip();
+        getChildren().add(canvas);
+        setMinSize(USE_PREF_SIZE, USE_PREF_SIZE);
+        setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
 
         this.setOnMousePressed((MouseEvent me) -> {
             if (boxes == null || tableView == null) {
@@ -66,14 +97,12 @@ public class ImageCanvas extends Canvas {
                 //paint();
                 // select corresponding table rows
                 boxClickAction = true;
-                java.util.List<TessBox> boxesOfCurPage = boxes.toList(); // boxes of current page
-                
                 if (!box.isSelected()) {
-                    int index = boxesOfCurPage.indexOf(box);
+                    int index = boxes.indexOf(box);
                     tableView.getSelectionModel().clearSelection(index);
                 }
                 for (TessBox selectedBox : boxes.getSelectedBoxes()) {
-                    int index = boxesOfCurPage.indexOf(selectedBox);
+                    int index = boxes.indexOf(selectedBox);
                     tableView.getSelectionModel().select(index);
                     tableView.scrollTo(index > 10 ? index - 4 : index); // fix issue with selected row pegged at the top
                 }
@@ -118,24 +147,123 @@ public class ImageCanvas extends Canvas {
         });
     }
 
+    /**
+     * Paints the image and boxes in the viewport. Only the areas whose boxes
+     * have changed since the last paint are redrawn, unless the whole viewport
+     * is invalid.
+     */
     public void paint() {
-        final GraphicsContext gc = getGraphicsContext2D();
+        final GraphicsContext gc = canvas.getGraphicsContext2D();
 
         if (image == null) {
             return;
         }
 
-        gc.clearRect(0, 0, getWidth(), getHeight());
-        gc.drawImage(image, 0, 0);
-        
-        if (boxes == null) {
+        List<Rectangle2D> regions = boxes == null ? null : boxes.takeDirtyRegions();
+        if (fullRepaint || regions == null) {
+            fullRepaint = false;
+            gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            paintRegion(gc, viewport);
             return;
         }
 
+        for (Rectangle2D region : mergeRegions(regions)) {
+            paintRegion(gc, region);
+        }
+    }
+
+    /**
+     * Redraws the image and box outlines within an area of the page.
+     */
+    private void paintRegion(GraphicsContext gc, Rectangle2D region) {
+        double minX = Math.max(viewport.getMinX(), Math.floor(region.getMinX()) - STROKE_MARGIN);
+        double minY = Math.max(viewport.getMinY(), Math.floor(region.getMinY()) - STROKE_MARGIN);
+        double maxX = Math.min(viewport.getMaxX(), Math.ceil(region.getMaxX()) + STROKE_MARGIN);
+        double maxY = Math.min(viewport.getMaxY(), Math.ceil(region.getMaxY()) + STROKE_MARGIN);
+        if (maxX <= minX || maxY <= minY) {
+            return; // not visible
+        }
+        double w = maxX - minX;
+        double h = maxY - minY;
+
+        gc.save();
+        gc.translate(-viewport.getMinX(), -viewport.getMinY()); // draw in page coordinates
+        gc.beginPath();
+        gc.rect(minX, minY, w, h);
+        gc.clip();
+        gc.clearRect(minX, minY, w, h);
+        for (int row = (int) minY / TILE_SIZE; row * TILE_SIZE < maxY; row++) {
+            for (int col = (int) minX / TILE_SIZE; col * TILE_SIZE < maxX; col++) {
+                gc.drawImage(getTile(col, row), col * TILE_SIZE, row * TILE_SIZE);
+            }
+        }
+        if (boxes != null) {
+            // outlines of neighboring boxes may reach into the area
+            Rectangle2D area = new Rectangle2D(minX - STROKE_MARGIN, minY - STROKE_MARGIN, w + 2 * STROKE_MARGIN, h + 2 * STROKE_MARGIN);
+            strokeBoxes(gc, boxes.getBoxesIntersecting(area));
+        }
+        gc.restore();
+    }
+
+    /**
+     * Gets a tile of the page image, cutting it from the page if not cached.
+     */
+    private Image getTile(int col, int row) {
+        Long key = ((long) col << 32) | row;
+        Image tile = tiles.get(key);
+        if (tile == null) {
+            int x = col * TILE_SIZE;
+            int y = row * TILE_SIZE;
+            int w = Math.min(TILE_SIZE, (int) image.getWidth() - x);
+            int h = Math.min(TILE_SIZE, (int) image.getHeight() - y);
+            tile = new WritableImage(image.getPixelReader(), x, y, w, h);
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Moves the canvas to the part of the page visible in the scroll pane and
+     * repaints it if it has changed.
+     */
+    private void updateViewport() {
+        if (image == null) {
+            return;
+        }
+
+        double imageWidth = image.getWidth();
+        double imageHeight = image.getHeight();
+        double x = 0, y = 0, w = imageWidth, h = imageHeight;
+        if (scrollPane != null && scrollPane.getViewportBounds().getWidth() > 0) {
+            double viewportWidth = scrollPane.getViewportBounds().getWidth();
+            double viewportHeight = scrollPane.getViewportBounds().getHeight();
+            double hrange = scrollPane.getHmax() - scrollPane.getHmin();
+            double vrange = scrollPane.getVmax() - scrollPane.getVmin();
+            double hoffset = hrange == 0 ? 0 : Math.max(0, imageWidth - viewportWidth) * (scrollPane.getHvalue() - scrollPane.getHmin()) / hrange;
+            double voffset = vrange == 0 ? 0 : Math.max(0, imageHeight - viewportHeight) * (scrollPane.getVvalue() - scrollPane.getVmin()) / vrange;
+            x = Math.floor(hoffset);
+            y = Math.floor(voffset);
+            w = Math.min(imageWidth - x, Math.ceil(viewportWidth) + 1);
+            h = Math.min(imageHeight - y, Math.ceil(viewportHeight) + 1);
+        }
+
+        Rectangle2D newViewport = new Rectangle2D(x, y, Math.max(0, w), Math.max(0, h));
+        if (!newViewport.equals(viewport)) {
+            viewport = newViewport;
+            canvas.setWidth(viewport.getWidth());
+            canvas.setHeight(viewport.getHeight());
+            canvas.relocate(viewport.getMinX(), viewport.getMinY());
+            fullRepaint = true;
+            paint();
+        }
+    }
+
+    private void strokeBoxes(GraphicsContext gc, List<TessBox> boxList) {
+        gc.setLineWidth(1);
         gc.setStroke(Color.BLUE);
         boolean resetColor = false;
 
-        for (TessBox box : boxes.toList()) {
+        for (TessBox box : boxList) {
             if (box.isSelected()) {
                 gc.setLineWidth(2);
                 gc.setStroke(Color.RED);
@@ -151,13 +279,63 @@ public class ImageCanvas extends Canvas {
         }
     }
 
+    /**
+     * Combines overlapping areas, such as the old and new bounds of a moved
+     * box, so that each is drawn only once.
+     */
+    private static List<Rectangle2D> mergeRegions(List<Rectangle2D> regions) {
+        List<Rectangle2D> merged = new ArrayList<Rectangle2D>(regions.size());
+        for (Rectangle2D region : regions) {
+            boolean overlapped = true;
+            while (overlapped) {
+                overlapped = false;
+                for (int i = 0; i < merged.size(); i++) {
+                    Rectangle2D other = merged.get(i);
+                    if (region.intersects(other)) {
+                        double minX = Math.min(region.getMinX(), other.getMinX());
+                        double minY = Math.min(region.getMinY(), other.getMinY());
+                        double maxX = Math.max(region.getMaxX(), other.getMaxX());
+                        double maxY = Math.max(region.getMaxY(), other.getMaxY());
+                        region = new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+                        merged.remove(i);
+                        overlapped = true;
+                        break;
+                    }
+                }
+            }
+            merged.add(region);
+        }
+        return merged;
+    }
+
     public void setImage(Image image) {
         this.image = image;
-        this.setWidth(image.getWidth());
-        this.setHeight(image.getHeight());
+        this.setPrefSize(image.getWidth(), image.getHeight());
+        tiles.clear();
+        viewport = Rectangle2D.EMPTY;
+        updateViewport();
+        fullRepaint = true;
+    }
+
+    /**
+     * Sets the scroll pane showing this canvas, whose viewport determines what
+     * is drawn.
+     *
+     * @param scrollPane the enclosing scroll pane
+     */
+    public void setScrollPane(ScrollPane scrollPane) {
+        this.scrollPane = scrollPane;
+        InvalidationListener listener = observable -> updateViewport();
+        scrollPane.hvalueProperty().addListener(listener);
+        scrollPane.vvalueProperty().addListener(listener);
+        scrollPane.viewportBoundsProperty().addListener(listener);
+        updateViewport();
     }
 
     public void setBoxes(TessBoxCollection boxes) {
+        if (this.boxes != boxes) {
+            fullRepaint = true;
+        }
         this.boxes = boxes;
         //paint();
     }
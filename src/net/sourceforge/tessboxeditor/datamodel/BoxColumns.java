@@ -0,0 +1,148 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor.datamodel;
+
+import java.util.Arrays;
+import java.util.List;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * Boxes of a page stored column by column, in box file coordinates.
+ * <p>
+ * A box takes a string reference and four <code>int</code>s, against a few
+ * hundred bytes as a <code>TessBox</code> in a <code>TessBoxCollection</code>,
+ * so this is meant for large numbers of boxes that are generated or written,
+ * not edited. Coordinates have the origin at the bottom left of the page, as
+ * in box files, and are rounded to integers when added.
+ */
+public class BoxColumns {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private String[] chars;
+    private int[] left;
+    private int[] bottom;
+    private int[] right;
+    private int[] top;
+    private int size;
+
+    public BoxColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store.
+     *
+     * @param capacity expected number of boxes
+     */
+    public BoxColumns(int capacity) {
+        capacity = Math.max(capacity, 1);
+        chars = new String[capacity];
+        left = new int[capacity];
+        bottom = new int[capacity];
+        right = new int[capacity];
+        top = new int[capacity];
+    }
+
+    /**
+     * Copies the boxes of a collection.
+     *
+     * @param boxCol boxes, in image coordinates
+     * @param pageHeight height of the page image
+     * @return boxes in box file coordinates
+     */
+    public static BoxColumns of(TessBoxCollection boxCol, int pageHeight) {
+        List<TessBox> boxes = boxCol.toList();
+        BoxColumns columns = new BoxColumns(boxes.size());
+        for (TessBox box : boxes) {
+            columns.add(box.getCharacter(), box.getRect(), pageHeight);
+        }
+        return columns;
+    }
+
+    /**
+     * Adds a box given in image coordinates, with the origin at the top left.
+     *
+     * @param chrs character value
+     * @param rect bounding rectangle
+     * @param pageHeight height of the page image
+     */
+    public void add(String chrs, Rectangle2D rect, int pageHeight) {
+        add(chrs, round(rect.getMinX()), round(pageHeight - rect.getMinY() - rect.getHeight()), round(rect.getMinX() + rect.getWidth()), round(pageHeight - rect.getMinY()));
+    }
+
+    /**
+     * Adds a box given in box file coordinates.
+     *
+     * @param chrs character value
+     * @param left
+     * @param bottom
+     * @param right
+     * @param top
+     */
+    public void add(String chrs, int left, int bottom, int right, int top) {
+        if (size == chars.length) {
+            int capacity = size + (size >> 1) + 1;
+            chars = Arrays.copyOf(chars, capacity);
+            this.left = Arrays.copyOf(this.left, capacity);
+            this.bottom = Arrays.copyOf(this.bottom, capacity);
+            this.right = Arrays.copyOf(this.right, capacity);
+            this.top = Arrays.copyOf(this.top, capacity);
+        }
+        chars[size] = chrs;
+        this.left[size] = left;
+        this.bottom[size] = bottom;
+        this.right[size] = right;
+        this.top[size] = top;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getCharacter(int index) {
+        return chars[index];
+    }
+
+    public int getLeft(int index) {
+        return left[index];
+    }
+
+    public int getBottom(int index) {
+        return bottom[index];
+    }
+
+    public int getRight(int index) {
+        return right[index];
+    }
+
+    public int getTop(int index) {
+        return top[index];
+    }
+
+    /**
+     * Rounds half up, away from zero, as box files are written.
+     */
+    private static int round(double value) {
+        double abs = Math.abs(value);
+        int n = (int) abs;
+        if (abs - n >= 0.5) {
+            n++;
+        }
+        return value < 0 ? -n : n;
+    }
+}
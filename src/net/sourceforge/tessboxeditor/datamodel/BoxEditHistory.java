@@ -0,0 +1,419 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.tessboxeditor.datamodel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * Undo/redo history of box edits.
+ * <p>
+ * Each edit is kept as a small delta addressed by page and box index, rather
+ * than as a reference to the box, so edits remain valid when pages are
+ * decoded again from a saved file. Consecutive moves or resizes of the same
+ * box are coalesced into one edit. The oldest edits are dropped once the
+ * estimated memory used by the history exceeds the limit.
+ */
+public class BoxEditHistory {
+
+    public static final long DEFAULT_MEMORY_LIMIT = 4 * 1024 * 1024;
+
+    private final Deque<Edit> undoStack = new ArrayDeque<Edit>();
+    private final Deque<Edit> redoStack = new ArrayDeque<Edit>();
+    private final ReadOnlyBooleanWrapper canUndo = new ReadOnlyBooleanWrapper();
+    private final ReadOnlyBooleanWrapper canRedo = new ReadOnlyBooleanWrapper();
+    private final long memoryLimit;
+    private long memoryUsed;
+    private CompoundEdit compound; // edit being grouped, if any
+    private boolean coalesceMove; // whether the last edit added is a move open to coalescing
+
+    public BoxEditHistory() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Creates a history.
+     *
+     * @param memoryLimit approximate number of bytes the history may use
+     */
+    public BoxEditHistory(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Records the insertion of a box.
+     *
+     * @param page page index
+     * @param index index of the box after insertion
+     * @param box
+     */
+    public void addInsert(short page, int index, TessBox box) {
+        add(new InsertEdit(page, index, box, true));
+    }
+
+    /**
+     * Records the removal of a box.
+     *
+     * @param page page index
+     * @param index index of the box before removal
+     * @param box
+     */
+    public void addRemove(short page, int index, TessBox box) {
+        add(new InsertEdit(page, index, box, false));
+    }
+
+    /**
+     * Records a change of box bounds. Merged into the previous edit if that
+     * was a change of bounds of the same box.
+     *
+     * @param page page index
+     * @param index box index
+     * @param oldRect
+     * @param newRect
+     */
+    public void addMove(short page, int index, Rectangle2D oldRect, Rectangle2D newRect) {
+        if (coalesceMove && compound == null) {
+            MoveEdit last = (MoveEdit) undoStack.peekFirst();
+            if (last.page == page && last.index == index) {
+                last.newRect = newRect;
+                return;
+            }
+        }
+        add(new MoveEdit(page, index, oldRect, newRect));
+        coalesceMove = compound == null;
+    }
+
+    /**
+     * Records a change of box character.
+     *
+     * @param page page index
+     * @param index box index
+     * @param oldChrs
+     * @param newChrs
+     */
+    public void addCharacterChange(short page, int index, String oldChrs, String newChrs) {
+        add(new CharacterEdit(page, index, oldChrs, newChrs));
+    }
+
+    /**
+     * Starts grouping the edits that follow into a single undoable edit.
+     *
+     * @param page page index of the edits
+     */
+    public void beginCompound(short page) {
+        compound = new CompoundEdit(page);
+    }
+
+    /**
+     * Ends grouping edits.
+     */
+    public void endCompound() {
+        CompoundEdit edit = compound;
+        compound = null;
+        if (edit != null && !edit.edits.isEmpty()) {
+            add(edit);
+        }
+    }
+
+    /**
+     * Gets the page of the edit that would be undone.
+     *
+     * @return page index, or -1 if there is nothing to undo
+     */
+    public short getUndoPage() {
+        return undoStack.isEmpty() ? -1 : undoStack.peekFirst().page;
+    }
+
+    /**
+     * Gets the page of the edit that would be redone.
+     *
+     * @return page index, or -1 if there is nothing to redo
+     */
+    public short getRedoPage() {
+        return redoStack.isEmpty() ? -1 : redoStack.peekFirst().page;
+    }
+
+    /**
+     * Reverts the last edit.
+     *
+     * @param boxPages boxes of each page
+     * @return index of the affected box, or -1 if none
+     */
+    public int undo(List<TessBoxCollection> boxPages) {
+        Edit edit = undoStack.pollFirst();
+        if (edit == null) {
+            return -1;
+        }
+        coalesceMove = false;
+        int index = edit.undo(boxPages.get(edit.page));
+        redoStack.addFirst(edit);
+        updateState();
+        return index;
+    }
+
+    /**
+     * Reapplies the last reverted edit.
+     *
+     * @param boxPages boxes of each page
+     * @return index of the affected box, or -1 if none
+     */
+    public int redo(List<TessBoxCollection> boxPages) {
+        Edit edit = redoStack.pollFirst();
+        if (edit == null) {
+            return -1;
+        }
+        coalesceMove = false;
+        int index = edit.redo(boxPages.get(edit.page));
+        undoStack.addFirst(edit);
+        updateState();
+        return index;
+    }
+
+    /**
+     * Discards all edits.
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        compound = null;
+        coalesceMove = false;
+        memoryUsed = 0;
+        updateState();
+    }
+
+    public ReadOnlyBooleanProperty canUndoProperty() {
+        return canUndo.getReadOnlyProperty();
+    }
+
+    public ReadOnlyBooleanProperty canRedoProperty() {
+        return canRedo.getReadOnlyProperty();
+    }
+
+    private void add(Edit edit) {
+        coalesceMove = false;
+        if (compound != null) {
+            compound.add(edit);
+            return;
+        }
+        for (Edit redo : redoStack) {
+            memoryUsed -= redo.size();
+        }
+        redoStack.clear();
+        undoStack.addFirst(edit);
+        memoryUsed += edit.size();
+        trim();
+    }
+
+    /**
+     * Drops the oldest edits until the history fits in its memory limit. The
+     * latest edit is always kept.
+     */
+    private void trim() {
+        while (memoryUsed > memoryLimit && undoStack.size() > 1) {
+            memoryUsed -= undoStack.pollLast().size();
+        }
+        updateState();
+    }
+
+    private void updateState() {
+        canUndo.set(!undoStack.isEmpty());
+        canRedo.set(!redoStack.isEmpty());
+    }
+
+    /**
+     * A reversible change to the boxes of a page.
+     */
+    private static abstract class Edit {
+
+        static final int OVERHEAD = 32; // object header and fields, approximately
+
+        final short page;
+        final int index;
+
+        Edit(short page, int index) {
+            this.page = page;
+            this.index = index;
+        }
+
+        abstract int undo(TessBoxCollection boxes);
+
+        abstract int redo(TessBoxCollection boxes);
+
+        /**
+         * Estimated memory footprint in bytes.
+         */
+        abstract long size();
+    }
+
+    /**
+     * Insertion, or removal, of a box. Keeps the box values, not the box.
+     */
+    private static class InsertEdit extends Edit {
+
+        final String chrs;
+        final Rectangle2D rect;
+        final short boxPage;
+        final boolean insert;
+
+        InsertEdit(short page, int index, TessBox box, boolean insert) {
+            super(page, index);
+            this.chrs = box.getCharacter();
+            this.rect = box.getRect();
+            this.boxPage = box.getPage();
+            this.insert = insert;
+        }
+
+        @Override
+        int undo(TessBoxCollection boxes) {
+            return apply(boxes, !insert);
+        }
+
+        @Override
+        int redo(TessBoxCollection boxes) {
+            return apply(boxes, insert);
+        }
+
+        private int apply(TessBoxCollection boxes, boolean add) {
+            if (add) {
+                boxes.add(index, new TessBox(chrs, rect, boxPage));
+                return index;
+            }
+            boxes.remove(index);
+            return Math.min(index, boxes.toList().size() - 1);
+        }
+
+        @Override
+        long size() {
+            return OVERHEAD + 48 + 40 + 2L * chrs.length();
+        }
+    }
+
+    /**
+     * Change of box bounds.
+     */
+    private static class MoveEdit extends Edit {
+
+        final Rectangle2D oldRect;
+        Rectangle2D newRect;
+
+        MoveEdit(short page, int index, Rectangle2D oldRect, Rectangle2D newRect) {
+            super(page, index);
+            this.oldRect = oldRect;
+            this.newRect = newRect;
+        }
+
+        @Override
+        int undo(TessBoxCollection boxes) {
+            boxes.toList().get(index).setRect(oldRect);
+            return index;
+        }
+
+        @Override
+        int redo(TessBoxCollection boxes) {
+            boxes.toList().get(index).setRect(newRect);
+            return index;
+        }
+
+        @Override
+        long size() {
+            return OVERHEAD + 2 * 48;
+        }
+    }
+
+    /**
+     * Change of box character.
+     */
+    private static class CharacterEdit extends Edit {
+
+        final String oldChrs;
+        final String newChrs;
+
+        CharacterEdit(short page, int index, String oldChrs, String newChrs) {
+            super(page, index);
+            this.oldChrs = oldChrs;
+            this.newChrs = newChrs;
+        }
+
+        @Override
+        int undo(TessBoxCollection boxes) {
+            boxes.toList().get(index).setCharacter(oldChrs);
+            return index;
+        }
+
+        @Override
+        int redo(TessBoxCollection boxes) {
+            boxes.toList().get(index).setCharacter(newChrs);
+            return index;
+        }
+
+        @Override
+        long size() {
+            return OVERHEAD + 2 * 40 + 2L * (length(oldChrs) + length(newChrs));
+        }
+
+        private static int length(String s) {
+            return s == null ? 0 : s.length();
+        }
+    }
+
+    /**
+     * Edits undone and redone as one, such as those making up a merge.
+     */
+    private static class CompoundEdit extends Edit {
+
+        final List<Edit> edits = new ArrayList<Edit>();
+
+        CompoundEdit(short page) {
+            super(page, -1);
+        }
+
+        void add(Edit edit) {
+            edits.add(edit);
+        }
+
+        @Override
+        int undo(TessBoxCollection boxes) {
+            int index = -1;
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                index = edits.get(i).undo(boxes);
+            }
+            return index;
+        }
+
+        @Override
+        int redo(TessBoxCollection boxes) {
+            int index = -1;
+            for (Edit edit : edits) {
+                index = edit.redo(boxes);
+            }
+            return index;
+        }
+
+        @Override
+        long size() {
+            long size = OVERHEAD + 16;
+            for (Edit edit : edits) {
+                size += edit.size();
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.sourceforge.tessboxeditor.datamodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * Uniform grid spatial index of boxes. Each box is registered in every cell
+ * its bounding rectangle overlaps, so point and area queries only look at
+ * the boxes of the cells involved.
+ */
+class BoxGrid {
+
+    private static final int CELL_SIZE = 64;
+
+    private final Map<Long, List<TessBox>> cells = new HashMap<Long, List<TessBox>>();
+
+    /**
+     * Adds a box to the cells covered by a rectangle.
+     *
+     * @param box
+     * @param rect
+     */
+    void add(TessBox box, Rectangle2D rect) {
+        int minCol = cell(rect.getMinX()), maxCol = cell(rect.getMaxX());
+        int minRow = cell(rect.getMinY()), maxRow = cell(rect.getMaxY());
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                List<TessBox> boxes = cells.get(key(col, row));
+                if (boxes == null) {
+                    boxes = new ArrayList<TessBox>(4);
+                    cells.put(key(col, row), boxes);
+                }
+                boxes.add(box);
+            }
+        }
+    }
+
+    /**
+     * Removes a box from the cells covered by a rectangle.
+     *
+     * @param box
+     * @param rect the rectangle the box was added with
+     */
+    void remove(TessBox box, Rectangle2D rect) {
+        int minCol = cell(rect.getMinX()), maxCol = cell(rect.getMaxX());
+        int minRow = cell(rect.getMinY()), maxRow = cell(rect.getMaxY());
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                Long key = key(col, row);
+                List<TessBox> boxes = cells.get(key);
+                if (boxes == null) {
+                    continue;
+                }
+                for (int i = boxes.size() - 1; i >= 0; i--) {
+                    if (boxes.get(i) == box) {
+                        boxes.remove(i);
+                        break;
+                    }
+                }
+                if (boxes.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the boxes registered in the cell of a point.
+     *
+     * @param x
+     * @param y
+     * @return candidate boxes; may include boxes not containing the point
+     */
+    List<TessBox> candidates(double x, double y) {
+        List<TessBox> boxes = cells.get(key(cell(x), cell(y)));
+        return boxes == null ? Collections.<TessBox>emptyList() : boxes;
+    }
+
+    /**
+     * Gets the boxes registered in the cells overlapped by an area.
+     *
+     * @param area
+     * @return distinct candidate boxes; may include boxes outside the area
+     */
+    Set<TessBox> candidates(Rectangle2D area) {
+        Set<TessBox> result = Collections.newSetFromMap(new IdentityHashMap<TessBox, Boolean>());
+        int minCol = cell(area.getMinX()), maxCol = cell(area.getMaxX());
+        int minRow = cell(area.getMinY()), maxRow = cell(area.getMaxY());
+        for (int col = minCol; col <= maxCol; col++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                List<TessBox> boxes = cells.get(key(col, row));
+                if (boxes != null) {
+                    result.addAll(boxes);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int cell(double coord) {
+        return (int) Math.floor(coord / CELL_SIZE);
+    }
+
+    private static Long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+}
@@ -22,26 +22,48 @@ import javafx.geometry.Rectangle2D;
 
 /**
  * Box data model.
+ * <p>
+ * Values are held in plain fields. The JavaFX properties used by table cells
+ * take several times the memory of the box itself, so they are created only
+ * when first asked for, that is, for rows that have been displayed. They are
+ * then kept for the life of the box.
  */
 public class TessBox {
 
-    private final SimpleStringProperty chrs;
+    private String chrs;
     private Rectangle2D rect;
-    private final SimpleIntegerProperty x;
-    private final SimpleIntegerProperty y;
-    private final SimpleIntegerProperty width;
-    private final SimpleIntegerProperty height;
     private short page;
     private boolean selected;
+    private Properties properties; // created on demand
+    TessBoxCollection owner; // collection indexing this box
+
+    /**
+     * Properties of a box, kept in sync with its values.
+     */
+    private class Properties {
+
+        final SimpleStringProperty chrs = new SimpleStringProperty(TessBox.this, "character", TessBox.this.chrs);
+        final SimpleIntegerProperty x = new SimpleIntegerProperty(TessBox.this, "x");
+        final SimpleIntegerProperty y = new SimpleIntegerProperty(TessBox.this, "y");
+        final SimpleIntegerProperty width = new SimpleIntegerProperty(TessBox.this, "width");
+        final SimpleIntegerProperty height = new SimpleIntegerProperty(TessBox.this, "height");
+
+        Properties() {
+            update();
+        }
+
+        void update() {
+            x.set(getX());
+            y.set(getY());
+            width.set(getWidth());
+            height.set(getHeight());
+        }
+    }
 
     public TessBox(String chrs, Rectangle2D rect, short page) {
-        this.chrs = new SimpleStringProperty(chrs);
+        this.chrs = chrs;
         this.page = page;
         this.rect = rect;
-        this.x = new SimpleIntegerProperty((int) rect.getMinX());
-        this.y = new SimpleIntegerProperty((int) rect.getMinY());
-        this.width = new SimpleIntegerProperty((int) rect.getWidth());
-        this.height = new SimpleIntegerProperty((int) rect.getHeight());
     }
 
     /**
@@ -59,7 +81,12 @@ public class TessBox {
      * @param selected the selected to set
      */
     public void setSelected(boolean selected) {
-        this.selected = selected;
+        if (this.selected != selected) {
+            this.selected = selected;
+            if (owner != null) {
+                owner.selectionChanged(this);
+            }
+        }
     }
 
     /**
@@ -108,11 +135,14 @@ public class TessBox {
      * @param rect the rectangle to set
      */
     public void setRect(Rectangle2D rect) {
+        Rectangle2D oldRect = this.rect;
         this.rect = rect;
-        this.x.set((int) rect.getMinX());
-        this.y.set((int) rect.getMinY());
-        this.width.set((int) rect.getWidth());
-        this.height.set((int) rect.getHeight());
+        if (owner != null) {
+            owner.boxMoved(this, oldRect);
+        }
+        if (properties != null) {
+            properties.update();
+        }
     }
 
     /**
@@ -121,7 +151,7 @@ public class TessBox {
      * @return the chrs
      */
     public String getCharacter() {
-        return chrs.get();
+        return chrs;
     }
 
     /**
@@ -130,43 +160,56 @@ public class TessBox {
      * @param value the chrs to set
      */
     public void setCharacter(String value) {
-        this.chrs.set(value);
+        this.chrs = value;
+        if (properties != null) {
+            properties.chrs.set(value);
+        }
+        if (owner != null) {
+            owner.characterChanged(this);
+        }
     }
 
     public SimpleStringProperty characterProperty() {
-        return chrs;
+        return getProperties().chrs;
     }
 
     public int getX() {
-        return this.x.get();
+        return (int) rect.getMinX();
     }
 
     public SimpleIntegerProperty xProperty() {
-        return this.x;
+        return getProperties().x;
     }
 
     public int getY() {
-        return this.y.get();
+        return (int) rect.getMinY();
     }
 
     public SimpleIntegerProperty yProperty() {
-        return this.y;
+        return getProperties().y;
     }
 
     public int getWidth() {
-        return this.width.get();
+        return (int) rect.getWidth();
     }
 
     public SimpleIntegerProperty widthProperty() {
-        return this.width;
+        return getProperties().width;
     }
 
     public int getHeight() {
-        return this.height.get();
+        return (int) rect.getHeight();
     }
 
     public SimpleIntegerProperty heightProperty() {
-        return this.height;
+        return getProperties().height;
+    }
+
+    private Properties getProperties() {
+        if (properties == null) {
+            properties = new Properties();
+        }
+        return properties;
     }
 
     /**
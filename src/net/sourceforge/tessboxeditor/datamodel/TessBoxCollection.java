@@ -16,8 +16,16 @@
 package net.sourceforge.tessboxeditor.datamodel;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.geometry.Point2D;
 import javafx.geometry.Rectangle2D;
@@ -30,9 +38,43 @@ public class TessBoxCollection {
     private String appendingSymbols;
     private String prependingSymbols;
     private final ObservableList<TessBox> list; // = FXCollections.observableArrayList();
+    private final BoxGrid grid = new BoxGrid(); // spatial index of boxes in list
+    private final Map<TessBox, Integer> positions = new IdentityHashMap<TessBox, Integer>(); // list index of boxes, rebuilt as needed
+    private boolean positionsValid;
+    private final Set<TessBox> selection = new LinkedHashSet<TessBox>(); // selected boxes in list
+    private static final int MAX_DIRTY_REGIONS = 64;
+    private final List<Rectangle2D> dirtyRegions = new ArrayList<Rectangle2D>(); // areas changed since last taken
+    private boolean allDirty = true;
+    private long modCount; // number of changes to the boxes
 
     public TessBoxCollection() {
         list = FXCollections.observableArrayList();
+        // keep the index in sync with any change to the list, including those made through toList()
+        list.addListener((ListChangeListener.Change<? extends TessBox> c) -> {
+            while (c.next()) {
+                if (c.wasPermutated()) {
+                    continue;
+                }
+                for (TessBox box : c.getRemoved()) {
+                    grid.remove(box, box.getRect());
+                    invalidate(box.getRect());
+                    selection.remove(box);
+                    if (box.owner == this) {
+                        box.owner = null;
+                    }
+                }
+                for (TessBox box : c.getAddedSubList()) {
+                    grid.add(box, box.getRect());
+                    invalidate(box.getRect());
+                    if (box.isSelected()) {
+                        selection.add(box);
+                    }
+                    box.owner = this;
+                }
+                modCount++;
+            }
+            positionsValid = false;
+        });
     }
 
     /**
@@ -58,11 +100,30 @@ public class TessBoxCollection {
      * Deselects all boxes.
      */
     public void deselectAll() {
-        for (TessBox box : list) {
+        for (TessBox box : selection.toArray(new TessBox[selection.size()])) {
             box.setSelected(false);
         }
     }
 
+    /**
+     * Makes the given boxes the only selected ones. Boxes whose selection
+     * state does not change are left untouched.
+     *
+     * @param boxesToSelect
+     */
+    public void setSelectedBoxes(Collection<TessBox> boxesToSelect) {
+        Set<TessBox> newSelection = Collections.newSetFromMap(new IdentityHashMap<TessBox, Boolean>());
+        newSelection.addAll(boxesToSelect);
+        for (TessBox box : selection.toArray(new TessBox[selection.size()])) {
+            if (!newSelection.contains(box)) {
+                box.setSelected(false);
+            }
+        }
+        for (TessBox box : newSelection) {
+            box.setSelected(true);
+        }
+    }
+
     /**
      * Gets observable list of boxes.
      *
@@ -79,12 +140,14 @@ public class TessBoxCollection {
      * @return
      */
     public TessBox select(TessBox findBox) {
-        for (TessBox box : list) {
-            if (box.getRect().equals(findBox.getRect())) {
-                return box;
+        Rectangle2D rect = findBox.getRect();
+        TessBox found = null;
+        for (TessBox box : grid.candidates(rect.getMinX(), rect.getMinY())) {
+            if (box.getRect().equals(rect) && (found == null || indexOf(box) < indexOf(found))) {
+                found = box;
             }
         }
-        return null;
+        return found;
     }
 
     /**
@@ -94,14 +157,15 @@ public class TessBoxCollection {
      * @return
      */
     public TessBox selectByChars(TessBox findBox) {
-        List<TessBox> selectedBoxes = getSelectedBoxes();
         List<TessBox> searchList;
 
-        if (selectedBoxes.isEmpty()) {
+        if (selection.isEmpty()) {
             searchList = list;
         } else {
-            TessBox lastSelectedBox = selectedBoxes.get(selectedBoxes.size() - 1);
-            int index = list.indexOf(lastSelectedBox);
+            int index = -1; // of the last selected box
+            for (TessBox box : selection) {
+                index = Math.max(index, indexOf(box));
+            }
             searchList = list.subList(index + 1, list.size());
         }
 
@@ -120,12 +184,14 @@ public class TessBoxCollection {
      * @return
      */
     public TessBox hitObject(Point2D p) {
-        for (TessBox box : list) {
-            if (box.contains(p)) {
-                return box;
+        TessBox found = null;
+        for (TessBox box : grid.candidates(p.getX(), p.getY())) {
+            // of overlapping boxes, the first one in list wins
+            if (box.contains(p) && (found == null || indexOf(box) < indexOf(found))) {
+                found = box;
             }
         }
-        return null;
+        return found;
     }
 
     /**
@@ -139,21 +205,149 @@ public class TessBoxCollection {
         return hitObject(new Point2D(x, y));
     }
 
+    /**
+     * Gets boxes overlapping an area.
+     *
+     * @param area
+     * @return boxes in list order
+     */
+    public List<TessBox> getBoxesIntersecting(Rectangle2D area) {
+        List<TessBox> found = new ArrayList<TessBox>();
+        for (TessBox box : grid.candidates(area)) {
+            if (area.intersects(box.getRect())) {
+                found.add(box);
+            }
+        }
+        if (found.size() > 1) {
+            Collections.sort(found, Comparator.comparingInt(this::indexOf));
+        }
+        return found;
+    }
+
+    /**
+     * Gets the list index of a box.
+     *
+     * @param box
+     * @return index, or -1 if the box is not in the list
+     */
+    public int indexOf(TessBox box) {
+        if (!positionsValid) {
+            positions.clear();
+            for (int i = 0; i < list.size(); i++) {
+                positions.put(list.get(i), i);
+            }
+            positionsValid = true;
+        }
+        Integer index = positions.get(box);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Updates the spatial index after a box has been resized or moved.
+     *
+     * @param box
+     * @param oldRect bounding rectangle before the change
+     */
+    void boxMoved(TessBox box, Rectangle2D oldRect) {
+        grid.remove(box, oldRect);
+        grid.add(box, box.getRect());
+        invalidate(oldRect);
+        invalidate(box.getRect());
+        modCount++;
+    }
+
+    /**
+     * Records a change to the character value of a box.
+     *
+     * @param box
+     */
+    void characterChanged(TessBox box) {
+        invalidate(box.getRect());
+        modCount++;
+    }
+
+    /**
+     * Gets the number of changes made to the boxes so far, be it to the list,
+     * their positions or their character values. Comparing two counts tells
+     * whether the boxes changed in between.
+     *
+     * @return modification count
+     */
+    public long getModificationCount() {
+        return modCount;
+    }
+
+    /**
+     * Updates the selection after a box has been selected or deselected.
+     *
+     * @param box
+     */
+    void selectionChanged(TessBox box) {
+        if (box.isSelected()) {
+            selection.add(box);
+        } else {
+            selection.remove(box);
+        }
+        invalidate(box.getRect());
+    }
+
+    /**
+     * Marks an area as needing to be redrawn. Once too many areas accumulate,
+     * the whole page is marked instead.
+     *
+     * @param rect
+     */
+    void invalidate(Rectangle2D rect) {
+        if (allDirty) {
+            return;
+        }
+        if (dirtyRegions.size() == MAX_DIRTY_REGIONS) {
+            dirtyRegions.clear();
+            allDirty = true;
+        } else {
+            dirtyRegions.add(rect);
+        }
+    }
+
+    /**
+     * Gets the areas changed since the last call, in box coordinates, and
+     * clears them.
+     *
+     * @return changed areas, or <code>null</code> if the whole page needs to be
+     * redrawn
+     */
+    public List<Rectangle2D> takeDirtyRegions() {
+        if (allDirty) {
+            allDirty = false;
+            return null;
+        }
+        List<Rectangle2D> regions = new ArrayList<Rectangle2D>(dirtyRegions);
+        dirtyRegions.clear();
+        return regions;
+    }
+
     /**
      * Gets selected boxes.
      *
      * @return
      */
     public List<TessBox> getSelectedBoxes() {
-        List<TessBox> selected = new ArrayList<TessBox>();
-        for (TessBox box : list) {
-            if (box.isSelected()) {
-                selected.add(box);
-            }
+        List<TessBox> selected = new ArrayList<TessBox>(selection);
+        if (selected.size() > 1) {
+            Collections.sort(selected, Comparator.comparingInt(this::indexOf));
         }
         return selected;
     }
 
+    /**
+     * Gets the number of selected boxes.
+     *
+     * @return
+     */
+    public int getSelectedCount() {
+        return selection.size();
+    }
+
     /**
      * Sets combining symbols.
      *
@@ -209,6 +403,18 @@ public class TessBoxCollection {
         return list.remove(box);
     }
 
+    /**
+     * Removes boxes from list.
+     *
+     * @param boxesToRemove
+     * @return
+     */
+    public boolean removeAll(Collection<TessBox> boxesToRemove) {
+        Set<TessBox> removing = Collections.newSetFromMap(new IdentityHashMap<TessBox, Boolean>());
+        removing.addAll(boxesToRemove);
+        return list.removeAll(removing);
+    }
+
     /**
      * Removes a box from list by index.
      *
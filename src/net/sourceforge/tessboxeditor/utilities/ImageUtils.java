@@ -15,53 +15,116 @@
  */
 package net.sourceforge.tessboxeditor.utilities;
 
-import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.util.Random;
+import java.awt.image.DataBufferByte;
+import java.nio.IntBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
 
 public class ImageUtils {
 
+    private static final int NOISE_ROWS_PER_TASK = 64;
+
     /**
      * Adds noise to an image. Adapted from an algorithm in
      * http://www.gutgames.com/post/Adding-Noise-to-an-Image-in-C.aspx
      *
      * @param originalImage
      * @param amount
-     * @return
+     * @return grayscale image with noise
      */
     public static BufferedImage addNoise(BufferedImage originalImage, int amount) {
-        BufferedImage targetImage = new BufferedImage(originalImage.getWidth(), originalImage.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-        Random randomizer = new Random();
-        int n = amount * 2 + 1;
-
-        for (int x = 0; x < targetImage.getWidth(); ++x) {
-            for (int y = 0; y < targetImage.getHeight(); ++y) {
-                int rgb = originalImage.getRGB(x, y);
-                Color color = new Color(rgb);
-                // add random integers ranging from -amount to amount
-                int r = color.getRed() + randomizer.nextInt(n) - amount;
-                int g = color.getGreen() + randomizer.nextInt(n) - amount;
-                int b = color.getBlue() + randomizer.nextInt(n) - amount;
-                r = r > 255 ? 255 : r;
-                r = r < 0 ? 0 : r;
-                g = g > 255 ? 255 : g;
-                g = g < 0 ? 0 : g;
-                b = b > 255 ? 255 : b;
-                b = b < 0 ? 0 : b;
-
-                color = new Color(r, g, b);
-                targetImage.setRGB(x, y, color.getRGB());
-            }
+        return addNoise(originalImage, amount, new SplittableRandom());
+    }
+
+    /**
+     * Adds reproducible noise to an image. The same seed gives the same
+     * noise, however the work is split among threads.
+     *
+     * @param originalImage
+     * @param amount
+     * @param seed seed of the random noise
+     * @return grayscale image with noise
+     */
+    public static BufferedImage addNoise(BufferedImage originalImage, int amount, long seed) {
+        return addNoise(originalImage, amount, new SplittableRandom(seed));
+    }
+
+    /**
+     * Adds a random integer ranging from -amount to amount to each gray value.
+     * Samples are changed directly in the data buffer of the target image,
+     * with rows split among the threads of the common fork-join pool.
+     */
+    private static BufferedImage addNoise(BufferedImage originalImage, int amount, SplittableRandom random) {
+        int width = originalImage.getWidth();
+        int height = originalImage.getHeight();
+        BufferedImage targetImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        if (originalImage.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            targetImage.setData(originalImage.getRaster());
+        } else {
+            Graphics2D g2d = targetImage.createGraphics();
+            g2d.drawImage(originalImage, 0, 0, null);
+            g2d.dispose();
+        }
+
+        if (amount > 0) {
+            byte[] pixels = ((DataBufferByte) targetImage.getRaster().getDataBuffer()).getData(); // one byte per pixel, rows packed
+            ForkJoinPool.commonPool().invoke(new NoiseTask(pixels, width, 0, height, amount, random));
         }
 
         return targetImage;
     }
 
+    /**
+     * Adds noise to a range of rows. Each task has its own generator, split
+     * from its parent's before the subtasks are forked, so that the noise
+     * depends only on the seed.
+     */
+    private static class NoiseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] pixels;
+        private final int width;
+        private final int rowStart;
+        private final int rowEnd;
+        private final int amount;
+        private final SplittableRandom random;
+
+        NoiseTask(byte[] pixels, int width, int rowStart, int rowEnd, int amount, SplittableRandom random) {
+            this.pixels = pixels;
+            this.width = width;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.amount = amount;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowEnd - rowStart > NOISE_ROWS_PER_TASK) {
+                int mid = (rowStart + rowEnd) >>> 1;
+                NoiseTask first = new NoiseTask(pixels, width, rowStart, mid, amount, random.split());
+                NoiseTask second = new NoiseTask(pixels, width, mid, rowEnd, amount, random);
+                invokeAll(first, second);
+                return;
+            }
+
+            int n = amount * 2 + 1;
+            for (int i = rowStart * width, end = rowEnd * width; i < end; i++) {
+                int gray = (pixels[i] & 0xFF) + random.nextInt(n) - amount;
+                pixels[i] = (byte) (gray > 255 ? 255 : gray < 0 ? 0 : gray);
+            }
+        }
+    }
+
     /**
      * Gets a subimage for display in boxview.
      *
@@ -98,7 +161,11 @@ public class ImageUtils {
     }
 
     /**
-     * https://gist.github.com/jewelsea/5415891
+     * Scales an image up by an integral factor, by nearest neighbour.
+     * Adapted from https://gist.github.com/jewelsea/5415891
+     * <p>
+     * Pixels are read and written in bulk: each source row is expanded once,
+     * then copied for the remaining output rows of the same source row.
      *
      * @param input
      * @param scaleFactor
@@ -108,25 +175,35 @@ public class ImageUtils {
         final int W = (int) input.getWidth();
         final int H = (int) input.getHeight();
         final int S = scaleFactor;
+        final int outW = W * S;
 
         WritableImage output = new WritableImage(
-                W * S,
+                outW,
                 H * S
         );
+        if (W == 0 || H == 0) {
+            return output;
+        }
 
-        PixelReader reader = input.getPixelReader();
-        PixelWriter writer = output.getPixelWriter();
+        WritablePixelFormat<IntBuffer> format = PixelFormat.getIntArgbPreInstance();
+        int[] in = new int[W * H];
+        input.getPixelReader().getPixels(0, 0, W, H, format, in, 0, W);
 
+        int[] out = new int[outW * H * S];
         for (int y = 0; y < H; y++) {
+            int rowStart = y * S * outW;
+            int pos = rowStart;
             for (int x = 0; x < W; x++) {
-                final int argb = reader.getArgb(x, y);
-                for (int dy = 0; dy < S; dy++) {
-                    for (int dx = 0; dx < S; dx++) {
-                        writer.setArgb(x * S + dx, y * S + dy, argb);
-                    }
+                int argb = in[y * W + x];
+                for (int dx = 0; dx < S; dx++) {
+                    out[pos++] = argb;
                 }
             }
+            for (int dy = 1; dy < S; dy++) {
+                System.arraycopy(out, rowStart, out, rowStart + dy * outW, outW);
+            }
         }
+        output.getPixelWriter().setPixels(0, 0, outW, H * S, format, out, 0, outW);
 
         return output;
     }
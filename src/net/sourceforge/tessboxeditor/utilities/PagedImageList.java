@@ -0,0 +1,165 @@
+/**
+ * Copyright @ 2018 Quan Nguyen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.sourceforge.tessboxeditor.utilities;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Pages of an image file, decoded on demand.
+ * <p>
+ * A single <code>ImageReader</code> is kept open on the file. Pages are
+ * decoded when requested and the most recently used ones are cached. Page
+ * heights are read from the image metadata without decoding any pixels.
+ */
+public class PagedImageList extends AbstractList<BufferedImage> implements Closeable {
+
+    private static final int DEFAULT_CACHE_SIZE = 4;
+
+    private final ImageInputStream iis;
+    private final ImageReader reader;
+    private final int numPages;
+    private final int[] heights;
+    private final Map<Integer, BufferedImage> cache;
+
+    /**
+     * Opens an image file.
+     *
+     * @param imageFile image file
+     * @throws IOException
+     */
+    public PagedImageList(File imageFile) throws IOException {
+        this(imageFile, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens an image file.
+     *
+     * @param imageFile image file
+     * @param cacheSize maximum number of decoded pages to keep
+     * @throws IOException
+     */
+    public PagedImageList(File imageFile, final int cacheSize) throws IOException {
+        String imageFileName = imageFile.getName();
+        String imageFormat = imageFileName.substring(imageFileName.lastIndexOf('.') + 1);
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(imageFormat);
+        if (!readers.hasNext()) {
+            throw new RuntimeException("Unsupported image format. May need to install JAI Image I/O package.\nhttps://github.com/jai-imageio/jai-imageio-core");
+        }
+
+        reader = readers.next();
+        iis = ImageIO.createImageInputStream(imageFile);
+        if (iis == null) {
+            reader.dispose();
+            throw new IOException("Cannot open " + imageFileName);
+        }
+        try {
+            reader.setInput(iis);
+            numPages = reader.getNumImages(true);
+        } catch (IOException | RuntimeException e) {
+            iis.close();
+            reader.dispose();
+            throw e;
+        }
+        heights = new int[numPages];
+        Arrays.fill(heights, -1);
+
+        cache = new LinkedHashMap<Integer, BufferedImage>(cacheSize + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Gets a page image, decoding it if not cached.
+     *
+     * @param index page index
+     * @return page image
+     */
+    @Override
+    public synchronized BufferedImage get(int index) {
+        BufferedImage image = cache.get(index);
+        if (image == null) {
+            try {
+                image = reader.read(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cache.put(index, image);
+        }
+        return image;
+    }
+
+    @Override
+    public int size() {
+        return numPages;
+    }
+
+    /**
+     * Gets the height of a page from the image metadata.
+     *
+     * @param index page index
+     * @return page height
+     */
+    public synchronized int getHeight(int index) {
+        if (heights[index] == -1) {
+            try {
+                heights[index] = reader.getHeight(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return heights[index];
+    }
+
+    /**
+     * Gets the heights of all pages.
+     *
+     * @return page heights
+     */
+    public int[] getPageHeights() {
+        int[] pageHeights = new int[numPages];
+        for (int i = 0; i < numPages; i++) {
+            pageHeights[i] = getHeight(i);
+        }
+        return pageHeights;
+    }
+
+    /**
+     * Releases the reader and the cached pages.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        cache.clear();
+        reader.dispose();
+        iis.close();
+    }
+}